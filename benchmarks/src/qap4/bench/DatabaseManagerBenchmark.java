@@ -0,0 +1,91 @@
+package qap4.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks DatabaseManager inserts and full reads.
+ * Runs against an in-memory H2 database in PostgreSQL mode by default; pass
+ * -jvmArgsAppend "-Dqap4.db.url=jdbc:postgresql://localhost:5432/qap4_bench"
+ * to measure a locally started PostgreSQL server instead.
+ * Warning: the patients table is emptied and refilled before every iteration, so never point
+ * this at the application database. Setup refuses any database whose name does not contain "bench".
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dqap4.db.url=jdbc:h2:mem:qap4_bench;MODE=PostgreSQL;DB_CLOSE_DELAY=-1")
+@State(Scope.Thread)
+public class DatabaseManagerBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int rows;
+
+    private String url;
+    private String user;
+    private String password;
+    private int nextId;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        // Keep log messages from being built and queued inside the measured code
+        Targets.DISABLE_LOGGING.invokeExact();
+
+        url = System.getProperty("qap4.db.url", "jdbc:postgresql://localhost:5432/qap4_bench");
+        if (!databaseName(url).contains("bench")) {
+            throw new IllegalStateException("Refusing to run: fillTable deletes every patient in " + url
+                    + "; use a throwaway database whose name contains \"bench\", e.g. qap4_bench");
+        }
+        user = System.getProperty("qap4.db.user", "postgres");
+        password = System.getProperty("qap4.db.password", "postgres");
+        Targets.CREATE_TABLE.invokeExact();
+    }
+
+    // jdbc:postgresql://host:5432/NAME?opts or jdbc:h2:mem:NAME;opts
+    private static String databaseName(String url) {
+        String path = url.split("[;?]", 2)[0];
+        return path.substring(Math.max(path.lastIndexOf('/'), path.lastIndexOf(':')) + 1);
+    }
+
+    @Setup(Level.Iteration)
+    public void fillTable() throws SQLException {
+        try (Connection conn = DriverManager.getConnection(url, user, password)) {
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("DELETE FROM patients");
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO patients (id, first_name, last_name, dob) VALUES (?, ?, ?, ?)")) {
+                for (int i = 1; i <= rows; i++) {
+                    stmt.setInt(1, i);
+                    stmt.setString(2, "First" + i);
+                    stmt.setString(3, "Last" + i);
+                    stmt.setDate(4, Date.valueOf("1980-01-01"));
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            conn.commit();
+        }
+        nextId = rows + 1;
+    }
+
+    @Benchmark
+    public List<?> getAllPatients() throws Throwable {
+        return (List<?>) Targets.GET_ALL_PATIENTS.invokeExact();
+    }
+
+    @Benchmark
+    public List<?> getAllCompactPatients() throws Throwable {
+        return (List<?>) Targets.GET_ALL_COMPACT_PATIENTS.invokeExact();
+    }
+
+    @Benchmark
+    public void savePatient() throws Throwable {
+        Object patient = (Object) Targets.NEW_PATIENT.invokeExact(nextId++, "Bench", "Patient", "1990-06-15");
+        Targets.SAVE_PATIENT.invokeExact(patient);
+    }
+}
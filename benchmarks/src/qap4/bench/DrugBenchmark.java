@@ -0,0 +1,35 @@
+package qap4.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the CSV conversion used for every line of the drug file.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DrugBenchmark {
+    private Object drug;
+    private String line;
+
+    @Setup
+    public void setup() throws Throwable {
+        drug = (Object) Targets.NEW_DRUG.invokeExact(101, "Aspirin", 15.50, "500mg");
+        line = (String) Targets.DRUG_TO_STRING.invokeExact(drug);
+    }
+
+    @Benchmark
+    public String drugToString() throws Throwable {
+        return (String) Targets.DRUG_TO_STRING.invokeExact(drug);
+    }
+
+    @Benchmark
+    public Object drugFromString() throws Throwable {
+        return (Object) Targets.DRUG_FROM_STRING.invokeExact(line);
+    }
+}
@@ -0,0 +1,67 @@
+package qap4.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks FileManager reads and appends against drug files of several sizes.
+ * Status messages printed by FileManager are discarded so the console does not skew the results.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FileManagerBenchmark {
+    @Param({"100", "10000", "100000"})
+    public int rows;
+
+    private Path file;
+    private String filePath;
+    private Object drug;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        // Keep log messages from being built and queued inside the measured code
+        Targets.DISABLE_LOGGING.invokeExact();
+
+        file = Files.createTempFile("drug_bench_", ".txt");
+        filePath = file.toString();
+        drug = (Object) Targets.NEW_DRUG.invokeExact(rows + 1, "BenchDrug", 9.99, "250mg");
+    }
+
+    /**
+     * Rewrites the file with exactly {@code rows} records so appends from the
+     * previous iteration do not change the size being measured.
+     */
+    @Setup(Level.Iteration)
+    public void fillFile() throws Throwable {
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int i = 1; i <= rows; i++) {
+                Object row = (Object) Targets.NEW_DRUG.invokeExact(i, "Drug" + i, i % 100 + 0.99, (i % 10 + 1) * 50 + "mg");
+                writer.write((String) Targets.DRUG_TO_STRING.invokeExact(row));
+                writer.newLine();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public List<?> readAllDrugs() throws Throwable {
+        return (List<?>) Targets.READ_ALL_DRUGS.invokeExact(filePath);
+    }
+
+    @Benchmark
+    public void saveDrug() throws Throwable {
+        Targets.SAVE_DRUG.invokeExact(drug, filePath);
+    }
+}
@@ -0,0 +1,78 @@
+package qap4.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+/**
+ * Entry points into the application classes.
+ * The application lives in the unnamed package, which JMH benchmarks cannot import,
+ * so each call is bound once through a static final MethodHandle. The JIT treats
+ * these as constants and inlines them, so they cost the same as a direct call.
+ */
+final class Targets {
+    static final MethodHandle NEW_DRUG;
+    static final MethodHandle DRUG_TO_STRING;
+    static final MethodHandle DRUG_FROM_STRING;
+    static final MethodHandle SAVE_DRUG;
+    static final MethodHandle READ_ALL_DRUGS;
+    static final MethodHandle NEW_PATIENT;
+    static final MethodHandle SAVE_PATIENT;
+    static final MethodHandle GET_ALL_PATIENTS;
+    static final MethodHandle GET_ALL_COMPACT_PATIENTS;
+    static final MethodHandle CREATE_TABLE;
+    static final MethodHandle DISABLE_LOGGING;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> drug = Class.forName("Drug");
+            Class<?> patient = Class.forName("Patient");
+            Class<?> fileManager = Class.forName("FileManager");
+            Class<?> databaseManager = Class.forName("DatabaseManager");
+
+            NEW_DRUG = lookup.findConstructor(drug,
+                    MethodType.methodType(void.class, int.class, String.class, double.class, String.class))
+                    .asType(MethodType.methodType(Object.class, int.class, String.class, double.class, String.class));
+            DRUG_TO_STRING = lookup.findVirtual(drug, "toString", MethodType.methodType(String.class))
+                    .asType(MethodType.methodType(String.class, Object.class));
+            DRUG_FROM_STRING = lookup.findStatic(drug, "fromString", MethodType.methodType(drug, String.class))
+                    .asType(MethodType.methodType(Object.class, String.class));
+            SAVE_DRUG = lookup.findStatic(fileManager, "saveDrug",
+                    MethodType.methodType(void.class, drug, String.class))
+                    .asType(MethodType.methodType(void.class, Object.class, String.class));
+            READ_ALL_DRUGS = lookup.findStatic(fileManager, "readAllDrugs",
+                    MethodType.methodType(List.class, String.class));
+
+            NEW_PATIENT = lookup.findConstructor(patient,
+                    MethodType.methodType(void.class, int.class, String.class, String.class, String.class))
+                    .asType(MethodType.methodType(Object.class, int.class, String.class, String.class, String.class));
+            SAVE_PATIENT = lookup.findStatic(databaseManager, "savePatient",
+                    MethodType.methodType(void.class, patient))
+                    .asType(MethodType.methodType(void.class, Object.class));
+            GET_ALL_PATIENTS = lookup.findStatic(databaseManager, "getAllPatients",
+                    MethodType.methodType(List.class));
+            GET_ALL_COMPACT_PATIENTS = lookup.findStatic(databaseManager, "getAllCompactPatients",
+                    MethodType.methodType(List.class));
+            CREATE_TABLE = lookup.findStatic(databaseManager, "createTableIfNotExists",
+                    MethodType.methodType(void.class));
+
+            Class<?> persistenceLog = Class.forName("PersistenceLog");
+            Class<?> level = Class.forName("PersistenceLog$Level");
+            DISABLE_LOGGING = MethodHandles.insertArguments(
+                    lookup.findStatic(persistenceLog, "setLevel", MethodType.methodType(void.class, level)),
+                    0, levelOff(level));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Targets() {
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object levelOff(Class<?> level) {
+        return Enum.valueOf((Class) level, "OFF");
+    }
+}
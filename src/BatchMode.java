@@ -0,0 +1,320 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Non-interactive batch mode for Main.
+ * Streams CSV input through buffered readers in fixed-size chunks and hands each chunk
+ * to the bulk write paths (FileManager.saveDrugs, DatabaseManager.savePatients),
+ * then prints a throughput summary.
+ *
+ * Usage:
+ *   java Main [--import-drugs drugs.csv] [--import-patients patients.csv]
+ *             [--export-drugs out.csv] [--export-patients out.csv]
+ *             [--drug-file drug_data.txt] [--batch-size 5000]
+ *
+ * Drug lines use the drug_data.txt format (id,name,cost,dosage); patient lines are
+ * id,first_name,last_name,dob with dob as YYYY-MM-DD. Patient fields may be double-quoted,
+ * with "" for a literal quote, and exported names are quoted when they need it.
+ * A leading header line is skipped.
+ */
+public class BatchMode {
+    private static final int READ_BUFFER_SIZE = 256 * 1024;
+
+    private final List<String[]> steps = new ArrayList<>();
+    private final List<String> summary = new ArrayList<>();
+    private String drugFile;
+    private int batchSize = 5000;
+    // Progress of the running step, kept in fields so a failed step can still report what it committed
+    private long imported;
+    private long rejected;
+
+    /**
+     * Runs the batch steps given on the command line, in order
+     * @param args command line arguments
+     * @return process exit code, 0 if every step succeeded
+     */
+    public static int run(String[] args) {
+        BatchMode batch = new BatchMode();
+        try {
+            batch.parseArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid arguments: " + e.getMessage());
+            System.out.println("Usage: java Main [--import-drugs FILE] [--import-patients FILE] " +
+                    "[--export-drugs FILE] [--export-patients FILE] [--drug-file FILE] [--batch-size N]");
+            return 2;
+        }
+
+        // Only show library warnings and errors; the summary reports the results
+        if (System.getProperty("qap4.log.level") == null) {
+            PersistenceLog.setLevel(PersistenceLog.Level.WARN);
+        }
+
+        int exitCode = 0;
+        for (String[] step : batch.steps) {
+            try {
+                batch.runStep(step[0], step[1]);
+            } catch (Exception e) {
+                PersistenceLog.flush();
+                System.out.println("Error in " + step[0].substring(2) + " " + step[1] + ": " + e.getMessage());
+                exitCode = 1;
+                break;
+            }
+        }
+
+        PersistenceLog.flush();
+        System.out.println("=== Batch Summary ===");
+        for (String line : batch.summary) {
+            System.out.println(line);
+        }
+        return exitCode;
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--import-drugs":
+                case "--import-patients":
+                case "--export-drugs":
+                case "--export-patients":
+                    steps.add(new String[]{arg, value(args, ++i, arg)});
+                    break;
+                case "--drug-file":
+                    drugFile = value(args, ++i, arg);
+                    break;
+                case "--batch-size":
+                    batchSize = Integer.parseInt(value(args, ++i, arg));
+                    if (batchSize <= 0) {
+                        throw new IllegalArgumentException("--batch-size must be positive");
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + arg);
+            }
+        }
+        if (steps.isEmpty()) {
+            throw new IllegalArgumentException("no import or export given");
+        }
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(option + " requires a value");
+        }
+        return args[index];
+    }
+
+    private void runStep(String option, String path) throws Exception {
+        long start = System.nanoTime();
+        imported = 0;
+        rejected = 0;
+        try {
+            switch (option) {
+                case "--import-drugs":
+                    importDrugs(path);
+                    break;
+                case "--import-patients":
+                    importPatients(path);
+                    break;
+                case "--export-drugs":
+                    imported = exportDrugs(path);
+                    break;
+                case "--export-patients":
+                    imported = exportPatients(path);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown step " + option);
+            }
+        } catch (Exception e) {
+            addSummary(option, path, start, " (failed)");
+            throw e;
+        }
+        addSummary(option, path, start, "");
+    }
+
+    private void addSummary(String option, String path, long start, String note) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        summary.add(String.format("%-16s %-24s %10d records %8d rejected %8.2f s %12.0f records/s%s",
+                option.substring(2), path, imported, rejected, seconds,
+                seconds > 0 ? imported / seconds : 0, note));
+    }
+
+    private void importDrugs(String path) throws IOException {
+        List<Drug> chunk = new ArrayList<>(batchSize);
+
+        try (BufferedReader reader = openReader(path)) {
+            String line;
+            boolean firstLine = true;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    chunk.add(Drug.fromString(line));
+                } catch (RuntimeException e) {
+                    if (!firstLine) {
+                        rejected++;
+                        PersistenceLog.warn("Rejected drug line: " + line);
+                    }
+                }
+                firstLine = false;
+
+                if (chunk.size() == batchSize) {
+                    imported += flushDrugs(chunk);
+                }
+            }
+        }
+        imported += flushDrugs(chunk);
+    }
+
+    private int flushDrugs(List<Drug> chunk) throws IOException {
+        int size = chunk.size();
+        if (size > 0) {
+            if (drugFile == null) {
+                FileManager.saveDrugs(chunk);
+            } else {
+                FileManager.saveDrugs(chunk, drugFile);
+            }
+            chunk.clear();
+        }
+        return size;
+    }
+
+    private void importPatients(String path) throws IOException, java.sql.SQLException {
+        List<Patient> chunk = new ArrayList<>(batchSize);
+        DatabaseManager.createTableIfNotExists();
+
+        try (BufferedReader reader = openReader(path)) {
+            String line;
+            boolean firstLine = true;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                Patient patient = parsePatient(line);
+                if (patient != null) {
+                    chunk.add(patient);
+                } else if (!firstLine) {
+                    rejected++;
+                    PersistenceLog.warn("Rejected patient line: " + line);
+                }
+                firstLine = false;
+
+                if (chunk.size() == batchSize) {
+                    imported += DatabaseManager.savePatients(chunk);
+                    chunk.clear();
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            imported += DatabaseManager.savePatients(chunk);
+        }
+    }
+
+    /**
+     * Parses "id,first_name,last_name,dob" without regular expressions
+     * @param line CSV line
+     * @return Patient, or null if the line is malformed
+     */
+    private static Patient parsePatient(String line) {
+        List<String> fields = csvFields(line);
+        if (fields == null || fields.size() != 4) {
+            return null;
+        }
+        try {
+            // Strict checks of the names and date: savePatients would otherwise fail, and roll back, the whole chunk
+            int id = Integer.parseInt(fields.get(0));
+            return CompactPatient.of(id, fields.get(1), fields.get(2), fields.get(3)).toPatient();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Splits a CSV line into trimmed fields, honoring double quotes
+     * @param line CSV line
+     * @return fields, or null if a quote is not closed
+     */
+    static List<String> csvFields(String line) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            return null;
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+
+    /**
+     * Quotes a CSV field if it contains a comma, quote or line break
+     * @param value field value
+     * @return value ready to write
+     */
+    static String csvField(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return '"' + value.replace("\"", "\"\"") + '"';
+            }
+        }
+        return value;
+    }
+
+    private long exportDrugs(String path) throws IOException {
+        List<Drug> drugs = drugFile == null ? FileManager.readAllDrugs() : FileManager.readAllDrugs(drugFile);
+        try (BufferedWriter writer = openWriter(path)) {
+            for (Drug drug : drugs) {
+                writer.write(drug.toString());
+                writer.newLine();
+            }
+        }
+        return drugs.size();
+    }
+
+    private long exportPatients(String path) throws IOException, java.sql.SQLException {
+        List<Patient> patients = DatabaseManager.getAllPatients();
+        try (BufferedWriter writer = openWriter(path)) {
+            writer.write("id,first_name,last_name,dob");
+            writer.newLine();
+            for (Patient patient : patients) {
+                writer.write(patient.getPatientId() + "," + csvField(patient.getFirstName()) + "," +
+                        csvField(patient.getLastName()) + "," + patient.getDob());
+                writer.newLine();
+            }
+        }
+        return patients.size();
+    }
+
+    private static BufferedReader openReader(String path) throws IOException {
+        return new BufferedReader(new InputStreamReader(Files.newInputStream(Paths.get(path)),
+                StandardCharsets.UTF_8), READ_BUFFER_SIZE);
+    }
+
+    private static BufferedWriter openWriter(String path) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(Paths.get(path)),
+                StandardCharsets.UTF_8), READ_BUFFER_SIZE);
+    }
+}
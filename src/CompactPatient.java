@@ -0,0 +1,140 @@
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+/**
+ * Compact, immutable Patient representation for large in-memory working sets.
+ * The date of birth is stored as an int epoch day instead of a String, which saves
+ * the String and its backing array per patient and avoids date parsing on every save.
+ * All values are validated at construction time.
+ */
+public final class CompactPatient {
+    private static final int MAX_NAME_LENGTH = 50;
+    private static final long MIN_EPOCH_DAY = LocalDate.of(1, 1, 1).toEpochDay();
+    private static final long MAX_EPOCH_DAY = LocalDate.of(9999, 12, 31).toEpochDay();
+
+    private final int patientId;
+    private final String firstName;
+    private final String lastName;
+    private final int dobEpochDay;
+
+    /**
+     * Constructor for CompactPatient
+     * @param patientId unique identifier for the patient
+     * @param firstName patient's first name, 1-50 characters
+     * @param lastName patient's last name, 1-50 characters
+     * @param dobEpochDay date of birth as days since 1970-01-01
+     * @throws IllegalArgumentException if a name or the date is invalid
+     */
+    public CompactPatient(int patientId, String firstName, String lastName, int dobEpochDay) {
+        this.patientId = patientId;
+        this.firstName = checkName(firstName, "First name");
+        this.lastName = checkName(lastName, "Last name");
+        if (dobEpochDay < MIN_EPOCH_DAY || dobEpochDay > MAX_EPOCH_DAY) {
+            throw new IllegalArgumentException("Date of birth out of range: epoch day " + dobEpochDay);
+        }
+        this.dobEpochDay = dobEpochDay;
+    }
+
+    /**
+     * Creates a CompactPatient from a YYYY-MM-DD date string
+     * @param patientId unique identifier for the patient
+     * @param firstName patient's first name
+     * @param lastName patient's last name
+     * @param dob date of birth in YYYY-MM-DD format
+     * @return CompactPatient
+     * @throws IllegalArgumentException if a name or the date is invalid
+     */
+    public static CompactPatient of(int patientId, String firstName, String lastName, String dob) {
+        return new CompactPatient(patientId, firstName, lastName, parseEpochDay(dob));
+    }
+
+    /**
+     * Converts a Patient to its compact form
+     * @param patient Patient to convert
+     * @return CompactPatient
+     * @throws IllegalArgumentException if the patient data is invalid
+     */
+    public static CompactPatient fromPatient(Patient patient) {
+        return of(patient.getPatientId(), patient.getFirstName(), patient.getLastName(), patient.getDob());
+    }
+
+    /**
+     * Parses a YYYY-MM-DD date without building intermediate strings
+     * @param dob date in YYYY-MM-DD format
+     * @return days since 1970-01-01
+     * @throws IllegalArgumentException if the date is malformed or does not exist
+     */
+    public static int parseEpochDay(String dob) {
+        if (dob == null || dob.length() != 10 || dob.charAt(4) != '-' || dob.charAt(7) != '-') {
+            throw new IllegalArgumentException("Invalid date format. Expected YYYY-MM-DD, got: " + dob);
+        }
+        int year = digits(dob, 0, 4);
+        int month = digits(dob, 5, 7);
+        int day = digits(dob, 8, 10);
+        if (year < 0 || month < 0 || day < 0) {
+            throw new IllegalArgumentException("Invalid date format. Expected YYYY-MM-DD, got: " + dob);
+        }
+        try {
+            return (int) LocalDate.of(year, month, day).toEpochDay();
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Invalid date: " + dob);
+        }
+    }
+
+    private static int digits(String value, int from, int to) {
+        int result = 0;
+        for (int i = from; i < to; i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    private static String checkName(String name, String field) {
+        if (name == null || name.isEmpty() || name.length() > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException(field + " must be 1-" + MAX_NAME_LENGTH + " characters, got: " + name);
+        }
+        return name;
+    }
+
+    /**
+     * Converts back to the mutable Patient class
+     * @return Patient with the date of birth formatted as YYYY-MM-DD
+     */
+    public Patient toPatient() {
+        return new Patient(patientId, firstName, lastName, getDobString());
+    }
+
+    @Override
+    public String toString() {
+        return "Patient ID: " + patientId + ", Name: " + firstName + " " + lastName + ", DOB: " + getDobString();
+    }
+
+    // Getters
+    public int getPatientId() {
+        return patientId;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public int getDobEpochDay() {
+        return dobEpochDay;
+    }
+
+    public LocalDate getDob() {
+        return LocalDate.ofEpochDay(dobEpochDay);
+    }
+
+    public String getDobString() {
+        return getDob().toString();
+    }
+}
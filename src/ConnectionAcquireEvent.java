@@ -0,0 +1,21 @@
+import jdk.jfr.*;
+
+/**
+ * JFR event emitted every time DatabaseManager opens, or fails to open, a JDBC connection.
+ */
+@Name("qap4.ConnectionAcquire")
+@Label("Connection Acquire")
+@Description("JDBC connection opened by DatabaseManager")
+@Category({"QAP4", "Database"})
+@StackTrace(false)
+public class ConnectionAcquireEvent extends Event {
+    @Label("URL")
+    public String url;
+
+    @Label("Success")
+    public boolean success;
+
+    @Label("Error")
+    @Description("Exception that failed the operation, or null")
+    public String error;
+}
@@ -0,0 +1,32 @@
+import java.io.*;
+
+/**
+ * CountingOutputStream counts the bytes passed to the underlying stream, so the write metrics
+ * report encoded bytes instead of characters. Not thread-safe; guard it like the writer on top.
+ */
+class CountingOutputStream extends FilterOutputStream {
+    private long count;
+
+    CountingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        count += len;
+    }
+
+    /**
+     * @return bytes written so far; flush the writer on top first to include buffered data
+     */
+    long getCount() {
+        return count;
+    }
+}
@@ -6,9 +6,147 @@ import java.util.*;
  * Provides functionality to save and retrieve Patient objects from PostgreSQL database.
  */
 public class DatabaseManager {
-    private static final String URL = "jdbc:postgresql://localhost:5432/qap4_database";
-    private static final String USER = "postgres";
-    private static final String PASSWORD = "postgres";
+    // Connection settings can be overridden with -Dqap4.db.url / -Dqap4.db.user / -Dqap4.db.password
+    private static final String URL = System.getProperty("qap4.db.url", "jdbc:postgresql://localhost:5432/qap4_database");
+    private static final String USER = System.getProperty("qap4.db.user", "postgres");
+    private static final String PASSWORD = System.getProperty("qap4.db.password", "postgres");
+    // Default synchronous_commit for inTransaction, e.g. -Dqap4.db.synchronousCommit=off; unset keeps the server setting
+    private static final PatientTransaction.SynchronousCommit SYNCHRONOUS_COMMIT =
+            parseSynchronousCommit(System.getProperty("qap4.db.synchronousCommit"));
+
+    private static PatientTransaction.SynchronousCommit parseSynchronousCommit(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return PatientTransaction.SynchronousCommit.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid -Dqap4.db.synchronousCommit=" + value
+                    + "; expected one of " + Arrays.toString(PatientTransaction.SynchronousCommit.values()));
+        }
+    }
+
+    /**
+     * Receives patient rows one at a time from streamPatients
+     */
+    @FunctionalInterface
+    public interface PatientRowHandler {
+        void accept(int patientId, String firstName, String lastName, int dobEpochDay);
+    }
+
+    /**
+     * Notified after patient changes made through DatabaseManager are committed and the
+     * connection that made them is closed. Listeners run on the saving thread.
+     */
+    public interface PatientChangeListener {
+        void patientSaved(int patientId, String firstName, String lastName, int dobEpochDay);
+
+        void patientDeleted(int patientId);
+    }
+
+    private static final List<PatientChangeListener> LISTENERS = new java.util.concurrent.CopyOnWriteArrayList<>();
+
+    private static final String INSERT_PATIENT_SQL = "INSERT INTO patients (id, first_name, last_name, dob) VALUES (?, ?, ?, ?)";
+
+    /**
+     * Registers a listener for committed patient saves and deletes made in this JVM
+     * @param listener listener to add
+     */
+    public static void addPatientChangeListener(PatientChangeListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    /**
+     * Removes a listener added with addPatientChangeListener
+     * @param listener listener to remove
+     */
+    public static void removePatientChangeListener(PatientChangeListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    static boolean hasPatientChangeListeners() {
+        return !LISTENERS.isEmpty();
+    }
+
+    /**
+     * Notifies listeners of a committed save. A failing listener is logged and skipped,
+     * since the save itself has already succeeded.
+     */
+    static void firePatientSaved(int patientId, String firstName, String lastName, int dobEpochDay) {
+        for (PatientChangeListener listener : LISTENERS) {
+            try {
+                listener.patientSaved(patientId, firstName, lastName, dobEpochDay);
+            } catch (RuntimeException e) {
+                PersistenceLog.error("Patient change listener failed for patient " + patientId + ": " + e);
+            }
+        }
+    }
+
+    static void firePatientDeleted(int patientId) {
+        for (PatientChangeListener listener : LISTENERS) {
+            try {
+                listener.patientDeleted(patientId);
+            } catch (RuntimeException e) {
+                PersistenceLog.error("Patient change listener failed for patient " + patientId + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * @param dob the date exactly as bound to the insert, so lenient inputs like 1990-1-5 match the stored row
+     */
+    private static void firePatientSaved(Patient patient, java.sql.Date dob) {
+        if (!hasPatientChangeListeners()) {
+            return;
+        }
+        firePatientSaved(patient.getPatientId(), patient.getFirstName(), patient.getLastName(),
+                (int) dob.toLocalDate().toEpochDay());
+    }
+
+    /**
+     * Opens a new connection to the database
+     * @return open Connection
+     * @throws SQLException if the connection cannot be established
+     */
+    private static Connection getConnection() throws SQLException {
+        return getConnection(false);
+    }
+
+    /**
+     * Opens a new connection to the database
+     * @param binaryDates true to have pgjdbc transfer DATE columns in binary form; server-side
+     *                    prepared statements are then used from the first execution, since binary
+     *                    transfer only applies to them. Ignored for databases other than PostgreSQL.
+     * @return open Connection
+     * @throws SQLException if the connection cannot be established
+     */
+    private static Connection getConnection(boolean binaryDates) throws SQLException {
+        ConnectionAcquireEvent event = new ConnectionAcquireEvent();
+        event.begin();
+        Exception failure = null;
+        try {
+            if (binaryDates && URL.startsWith("jdbc:postgresql:")) {
+                Properties props = new Properties();
+                props.setProperty("user", USER);
+                props.setProperty("password", PASSWORD);
+                props.setProperty("binaryTransferEnable", "DATE");
+                props.setProperty("prepareThreshold", "-1");
+                return DriverManager.getConnection(URL, props);
+            }
+            return DriverManager.getConnection(URL, USER, PASSWORD);
+        } catch (SQLException | RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            // Committed for failures too, so connection attempts that time out show up in recordings
+            if (event.shouldCommit()) {
+                event.url = URL;
+                event.success = failure == null;
+                event.error = failure == null ? null : failure.toString();
+                event.commit();
+            }
+        }
+    }
 
     /**
      * Saves a Patient object to the database
@@ -16,30 +154,347 @@ public class DatabaseManager {
      * @throws SQLException if database operations fail
      */
     public static void savePatient(Patient patient) throws SQLException {
-        String query = "INSERT INTO patients (id, first_name, last_name, dob) VALUES (?, ?, ?, ?)";
-        
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
-             PreparedStatement stmt = conn.prepareStatement(query)) {
+        long start = System.nanoTime();
+        PatientInsertEvent event = new PatientInsertEvent();
+        event.begin();
+        java.sql.Date sqlDate;
+        int rowsAffected = 0;
+        Exception failure = null;
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(INSERT_PATIENT_SQL)) {
             
             stmt.setInt(1, patient.getPatientId());
             stmt.setString(2, patient.getFirstName());
             stmt.setString(3, patient.getLastName());
             
             try {
-                java.sql.Date sqlDate = java.sql.Date.valueOf(patient.getDob());
+                sqlDate = java.sql.Date.valueOf(patient.getDob());
                 stmt.setDate(4, sqlDate);
             } catch (IllegalArgumentException e) {
                 throw new SQLException("Invalid date format. Expected YYYY-MM-DD, got: " + patient.getDob());
             }
             
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected > 0) {
-                System.out.println("Patient saved successfully to database!");
+            rowsAffected = stmt.executeUpdate();
+        } catch (SQLException | RuntimeException e) {
+            failure = e;
+            PersistenceMetrics.SAVE_PATIENT.recordError(start);
+            PersistenceLog.error("Error saving patient: " + e.getMessage());
+            throw e;
+        } finally {
+            if (event.shouldCommit()) {
+                event.sql = INSERT_PATIENT_SQL;
+                event.patientId = patient.getPatientId();
+                event.rowCount = failure == null ? rowsAffected : 0;
+                event.success = failure == null;
+                event.error = failure == null ? null : failure.toString();
+                event.commit();
             }
-        } catch (SQLException e) {
-            System.out.println("Error saving patient: " + e.getMessage());
+        }
+        
+        PersistenceMetrics.SAVE_PATIENT.record(start, rowsAffected, 0, 0);
+        // Listeners run after the connection is closed, so a slow listener never holds one
+        if (rowsAffected > 0) {
+            firePatientSaved(patient, sqlDate);
+            PersistenceLog.info("Patient saved successfully to database!");
+        }
+    }
+
+    /**
+     * Saves many Patient objects in one JDBC batch and a single transaction.
+     * Either all patients are saved or, if any insert fails, none are.
+     * @param patients Patient objects to save
+     * @return number of rows inserted
+     * @throws SQLException if database operations fail
+     */
+    public static int savePatients(List<Patient> patients) throws SQLException {
+        long start = System.nanoTime();
+        PatientInsertEvent event = new PatientInsertEvent();
+        event.begin();
+        int rowsAffected = 0;
+        Exception failure = null;
+        // Bound dates are kept only while someone listens for the saved patients
+        java.sql.Date[] dobs = hasPatientChangeListeners() ? new java.sql.Date[patients.size()] : null;
+        
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_PATIENT_SQL)) {
+                int i = 0;
+                for (Patient patient : patients) {
+                    stmt.setInt(1, patient.getPatientId());
+                    stmt.setString(2, patient.getFirstName());
+                    stmt.setString(3, patient.getLastName());
+                    
+                    try {
+                        java.sql.Date sqlDate = java.sql.Date.valueOf(patient.getDob());
+                        stmt.setDate(4, sqlDate);
+                        if (dobs != null) {
+                            dobs[i++] = sqlDate;
+                        }
+                    } catch (IllegalArgumentException e) {
+                        throw new SQLException("Invalid date format. Expected YYYY-MM-DD, got: " + patient.getDob());
+                    }
+                    stmt.addBatch();
+                }
+                
+                for (int count : stmt.executeBatch()) {
+                    rowsAffected += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException | RuntimeException e) {
+            failure = e;
+            PersistenceMetrics.SAVE_PATIENTS.recordError(start);
+            PersistenceLog.error("Error saving patients: " + e.getMessage());
+            throw e;
+        } finally {
+            if (event.shouldCommit()) {
+                event.sql = INSERT_PATIENT_SQL;
+                event.rowCount = failure == null ? rowsAffected : 0;
+                event.success = failure == null;
+                event.error = failure == null ? null : failure.toString();
+                event.commit();
+            }
+        }
+        
+        PersistenceMetrics.SAVE_PATIENTS.record(start, rowsAffected, 0, 0);
+        // Listeners run after the connection is closed, so a slow listener never holds one
+        if (dobs != null) {
+            for (int i = 0; i < dobs.length; i++) {
+                firePatientSaved(patients.get(i), dobs[i]);
+            }
+        }
+        if (PersistenceLog.isEnabled(PersistenceLog.Level.INFO)) {
+            PersistenceLog.info(rowsAffected + " patient(s) saved successfully to database!");
+        }
+        return rowsAffected;
+    }
+
+    /**
+     * Saves many CompactPatient objects in one JDBC batch and a single transaction.
+     * Dates are bound as LocalDate, so no java.sql.Date or date string is created per row.
+     * @param patients CompactPatient objects to save
+     * @return number of rows inserted
+     * @throws SQLException if database operations fail
+     */
+    public static int saveCompactPatients(List<CompactPatient> patients) throws SQLException {
+        long start = System.nanoTime();
+        PatientInsertEvent event = new PatientInsertEvent();
+        event.begin();
+        int rowsAffected = 0;
+        Exception failure = null;
+        
+        try (Connection conn = getConnection(true)) {
+            conn.setAutoCommit(false);
+            
+            try (PreparedStatement stmt = conn.prepareStatement(INSERT_PATIENT_SQL)) {
+                for (CompactPatient patient : patients) {
+                    stmt.setInt(1, patient.getPatientId());
+                    stmt.setString(2, patient.getFirstName());
+                    stmt.setString(3, patient.getLastName());
+                    stmt.setObject(4, patient.getDob());
+                    stmt.addBatch();
+                }
+                
+                for (int count : stmt.executeBatch()) {
+                    rowsAffected += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException | RuntimeException e) {
+            failure = e;
+            PersistenceMetrics.SAVE_COMPACT_PATIENTS.recordError(start);
+            PersistenceLog.error("Error saving patients: " + e.getMessage());
+            throw e;
+        } finally {
+            if (event.shouldCommit()) {
+                event.sql = INSERT_PATIENT_SQL;
+                event.rowCount = failure == null ? rowsAffected : 0;
+                event.success = failure == null;
+                event.error = failure == null ? null : failure.toString();
+                event.commit();
+            }
+        }
+        
+        PersistenceMetrics.SAVE_COMPACT_PATIENTS.record(start, rowsAffected, 0, 0);
+        // Listeners run after the connection is closed, so a slow listener never holds one
+        if (hasPatientChangeListeners()) {
+            for (CompactPatient patient : patients) {
+                firePatientSaved(patient.getPatientId(), patient.getFirstName(), patient.getLastName(), patient.getDobEpochDay());
+            }
+        }
+        if (PersistenceLog.isEnabled(PersistenceLog.Level.INFO)) {
+            PersistenceLog.info(rowsAffected + " patient(s) saved successfully to database!");
+        }
+        return rowsAffected;
+    }
+
+    /**
+     * Runs many patient saves, updates and deletes on one connection and commits them once.
+     * If the body throws, everything it did is rolled back; use tx.withSavepoint or
+     * tx.trySavePatient to let single rows fail without losing the rest.
+     * synchronous_commit comes from -Dqap4.db.synchronousCommit, if set.
+     * @param body work to run with the transaction
+     * @return number of rows changed by the committed transaction
+     * @throws SQLException if database operations fail
+     */
+    public static int inTransaction(PatientTransaction.Body body) throws SQLException {
+        return inTransaction(SYNCHRONOUS_COMMIT, body);
+    }
+
+    /**
+     * Runs many patient saves, updates and deletes on one connection and commits them once
+     * @param synchronousCommit synchronous_commit for this transaction only, or null for the
+     *                          server setting. Ignored for databases other than PostgreSQL.
+     * @param body work to run with the transaction
+     * @return number of rows changed by the committed transaction
+     * @throws SQLException if database operations fail
+     */
+    public static int inTransaction(PatientTransaction.SynchronousCommit synchronousCommit,
+                                    PatientTransaction.Body body) throws SQLException {
+        long start = System.nanoTime();
+        PatientTransaction tx;
+        
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            tx = new PatientTransaction(conn, INSERT_PATIENT_SQL);
+            
+            try {
+                if (synchronousCommit != null && URL.startsWith("jdbc:postgresql:")) {
+                    try (Statement stmt = conn.createStatement()) {
+                        stmt.execute("SET LOCAL synchronous_commit TO " + synchronousCommit.name().toLowerCase(Locale.ROOT));
+                    }
+                }
+                body.run(tx);
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                tx.close();
+            }
+        } catch (SQLException | RuntimeException e) {
+            PersistenceMetrics.TRANSACTION.recordError(start);
+            PersistenceLog.error("Error in transaction, rolled back: " + e.getMessage());
             throw e;
         }
+        
+        int rowsAffected = tx.getRowsAffected();
+        PersistenceMetrics.TRANSACTION.record(start, rowsAffected, 0, 0);
+        // Listeners run after the connection is closed, so a slow listener never holds one
+        tx.fireCommitted();
+        if (PersistenceLog.isEnabled(PersistenceLog.Level.INFO)) {
+            PersistenceLog.info("Transaction committed, " + rowsAffected + " row(s) changed.");
+        }
+        return rowsAffected;
+    }
+
+    /**
+     * Retrieves all patients as CompactPatient objects.
+     * On PostgreSQL the dob column is received in binary form and decoded straight to
+     * a LocalDate, skipping the java.sql.Date and String round trip of getAllPatients.
+     * @return List of CompactPatient objects ordered by id
+     * @throws SQLException if database operations fail
+     */
+    public static List<CompactPatient> getAllCompactPatients() throws SQLException {
+        long start = System.nanoTime();
+        PatientQueryEvent event = new PatientQueryEvent();
+        event.begin();
+        List<CompactPatient> patients = new ArrayList<>();
+        String query = "SELECT id, first_name, last_name, dob FROM patients ORDER BY id";
+        Exception failure = null;
+        
+        try (Connection conn = getConnection(true);
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setFetchSize(10_000);
+            conn.setAutoCommit(false);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    patients.add(new CompactPatient(
+                        rs.getInt(1),
+                        rs.getString(2),
+                        rs.getString(3),
+                        (int) rs.getObject(4, java.time.LocalDate.class).toEpochDay()
+                    ));
+                }
+            }
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            failure = e;
+            PersistenceMetrics.GET_ALL_COMPACT_PATIENTS.recordError(start);
+            PersistenceLog.error("Error retrieving patients: " + e.getMessage());
+            throw e;
+        } finally {
+            if (event.shouldCommit()) {
+                event.sql = query;
+                event.rowCount = patients.size();
+                event.success = failure == null;
+                event.error = failure == null ? null : failure.toString();
+                event.commit();
+            }
+        }
+        
+        PersistenceMetrics.GET_ALL_COMPACT_PATIENTS.record(start, patients.size(), 0, 0);
+        if (PersistenceLog.isEnabled(PersistenceLog.Level.INFO)) {
+            PersistenceLog.info("Found " + patients.size() + " patient(s) in the database:");
+        }
+        return patients;
+    }
+
+    /**
+     * Streams patients with an id greater than afterId to a handler without building
+     * Patient objects. Rows are fetched in chunks, so memory use does not grow with the table.
+     * @param afterId only rows with a larger id are returned; use Integer.MIN_VALUE for all rows
+     * @param handler receives each row in id order
+     * @return number of rows streamed
+     * @throws SQLException if database operations fail
+     */
+    public static int streamPatients(int afterId, PatientRowHandler handler) throws SQLException {
+        long start = System.nanoTime();
+        PatientQueryEvent event = new PatientQueryEvent();
+        event.begin();
+        String query = "SELECT id, first_name, last_name, dob FROM patients WHERE id > ? ORDER BY id";
+        int rows = 0;
+        Exception failure = null;
+        
+        try (Connection conn = getConnection(true);
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            conn.setAutoCommit(false);
+            stmt.setFetchSize(10_000);
+            stmt.setInt(1, afterId);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    handler.accept(rs.getInt(1), rs.getString(2), rs.getString(3),
+                            (int) rs.getObject(4, java.time.LocalDate.class).toEpochDay());
+                    rows++;
+                }
+            }
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            failure = e;
+            PersistenceMetrics.STREAM_PATIENTS.recordError(start);
+            PersistenceLog.error("Error streaming patients: " + e.getMessage());
+            throw e;
+        } finally {
+            if (event.shouldCommit()) {
+                event.sql = query;
+                event.rowCount = rows;
+                event.success = failure == null;
+                event.error = failure == null ? null : failure.toString();
+                event.commit();
+            }
+        }
+        
+        PersistenceMetrics.STREAM_PATIENTS.record(start, rows, 0, 0);
+        return rows;
     }
 
     /**
@@ -48,10 +503,14 @@ public class DatabaseManager {
      * @throws SQLException if database operations fail
      */
     public static List<Patient> getAllPatients() throws SQLException {
+        long start = System.nanoTime();
+        PatientQueryEvent event = new PatientQueryEvent();
+        event.begin();
         List<Patient> patients = new ArrayList<>();
         String query = "SELECT * FROM patients ORDER BY id";
+        Exception failure = null;
         
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
+        try (Connection conn = getConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(query)) {
             
@@ -67,27 +526,50 @@ public class DatabaseManager {
                 );
                 patients.add(patient);
             }
-            
-            if (patients.isEmpty()) {
-                System.out.println("No patients found in the database.");
-            } else {
-                System.out.println("Found " + patients.size() + " patient(s) in the database:");
-            }
-            
-        } catch (SQLException e) {
-            System.out.println("Error retrieving patients: " + e.getMessage());
+        } catch (SQLException | RuntimeException e) {
+            failure = e;
+            PersistenceMetrics.GET_ALL_PATIENTS.recordError(start);
+            PersistenceLog.error("Error retrieving patients: " + e.getMessage());
             throw e;
+        } finally {
+            if (event.shouldCommit()) {
+                event.sql = query;
+                event.rowCount = patients.size();
+                event.success = failure == null;
+                event.error = failure == null ? null : failure.toString();
+                event.commit();
+            }
         }
         
+        PersistenceMetrics.GET_ALL_PATIENTS.record(start, patients.size(), 0, 0);
+        if (patients.isEmpty()) {
+            PersistenceLog.info("No patients found in the database.");
+        } else if (PersistenceLog.isEnabled(PersistenceLog.Level.INFO)) {
+            PersistenceLog.info("Found " + patients.size() + " patient(s) in the database:");
+        }
         return patients;
     }
 
+    /**
+     * Returns the highest patient id in the database
+     * @return highest id, or 0 if the table is empty
+     * @throws SQLException if database operations fail
+     */
+    public static int getMaxPatientId() throws SQLException {
+        try (Connection conn = getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM patients")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
     /**
      * Tests the database connection
      * @return true if connection successful, false otherwise
      */
     public static boolean testConnection() {
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD)) {
+        try (Connection conn = getConnection()) {
             System.out.println("Database connection successful!");
             return true;
         } catch (SQLException e) {
@@ -109,11 +591,11 @@ public class DatabaseManager {
                 "dob DATE NOT NULL" +
                 ")";
         
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
+        try (Connection conn = getConnection();
              Statement stmt = conn.createStatement()) {
             
             stmt.executeUpdate(createTableQuery);
-            System.out.println("Patients table is ready.");
+            PersistenceLog.info("Patients table is ready.");
         }
     }
 }
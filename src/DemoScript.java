@@ -34,9 +34,11 @@ public class DemoScript {
         FileManager.saveDrug(drug1);
         FileManager.saveDrug(drug2);
         FileManager.saveDrug(drug3);
+        PersistenceLog.flush();
         
         System.out.println("Reading drugs from file:");
         var drugs = FileManager.readAllDrugs();
+        PersistenceLog.flush();
         
         System.out.println("ID\tName\t\t\tCost\tDosage");
         System.out.println("---\t----\t\t\t----\t------");
@@ -89,9 +91,11 @@ public class DemoScript {
             DatabaseManager.savePatient(patient1);
             DatabaseManager.savePatient(patient2);
             DatabaseManager.savePatient(patient3);
+            PersistenceLog.flush();
             
             System.out.println("Reading patients from database:");
             var patients = DatabaseManager.getAllPatients();
+            PersistenceLog.flush();
             
             System.out.println("ID\tFirst Name\tLast Name\tDate of Birth");
             System.out.println("---\t----------\t---------\t-------------");
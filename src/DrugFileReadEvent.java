@@ -0,0 +1,29 @@
+import jdk.jfr.*;
+
+/**
+ * JFR event emitted by FileManager.readAllDrugs for every full read of a drug file, and by
+ * ShardedDrugStore for every shard file it reads, including failed reads.
+ */
+@Name("qap4.DrugFileRead")
+@Label("Drug File Read")
+@Description("Full read of a drug data file or shard")
+@Category({"QAP4", "File"})
+@StackTrace(false)
+public class DrugFileReadEvent extends Event {
+    @Label("File Path")
+    public String filePath;
+
+    @Label("Rows")
+    public int rowCount;
+
+    @Label("Bytes Read")
+    @DataAmount
+    public long byteCount;
+
+    @Label("Success")
+    public boolean success;
+
+    @Label("Error")
+    @Description("Exception that failed the operation, or null")
+    public String error;
+}
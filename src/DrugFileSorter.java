@@ -0,0 +1,445 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * DrugFileSorter sorts drug files that are larger than the heap with an external merge sort.
+ * The input is read in chunks that fit the memory budget; each chunk is sorted and spilled
+ * to a temporary run file, and the runs are then merged k ways through a PriorityQueue.
+ * Up to 256 runs are merged at once, fewer if the budget cannot buffer that many readers;
+ * beyond that the runs are merged in several passes.
+ *
+ * The sort is stable, so records with equal keys keep their file order. With dedup enabled,
+ * only the last record for each drugId is kept, matching how appended saves overwrite
+ * earlier ones. Deduplicating while sorting by another column first sorts by drugId.
+ *
+ * Usage:
+ *   java DrugFileSorter --input drug_data.txt --output sorted.txt [--by id|name|cost|dosage]
+ *                       [--dedup] [--memory 64m] [--temp-dir DIR]
+ * The output may be the same path as the input; it is replaced only once the sort succeeds.
+ */
+public class DrugFileSorter {
+    public static final long DEFAULT_MEMORY_BYTES = 64L * 1024 * 1024;
+
+    // Rough heap cost of a parsed Drug beyond its characters: the Drug, two Strings and their arrays
+    private static final int DRUG_OVERHEAD_BYTES = 128;
+    // Buffer sizes are in chars, which take two bytes each
+    private static final int MIN_READ_BUFFER = 8 * 1024;
+    private static final int MAX_READ_BUFFER = 512 * 1024;
+    private static final int OUTPUT_BUFFER = 64 * 1024;
+    // Byte buffer each InputStreamReader/OutputStreamWriter keeps for charset decoding or encoding
+    private static final int CODER_BUFFER_BYTES = 8 * 1024;
+    // Open run files per merge; more runs are merged in several passes to stay under file descriptor limits
+    private static final int MAX_FAN_IN = 256;
+
+    /**
+     * Column to sort by
+     */
+    public enum SortKey {
+        ID(Comparator.comparingInt(Drug::getDrugId)),
+        NAME(Comparator.comparing(Drug::getDrugName)),
+        COST(Comparator.comparingDouble(Drug::getDrugCost)),
+        DOSAGE(Comparator.comparing(Drug::getDosage));
+
+        private final Comparator<Drug> comparator;
+
+        SortKey(Comparator<Drug> comparator) {
+            this.comparator = comparator;
+        }
+
+        public Comparator<Drug> comparator() {
+            return comparator;
+        }
+    }
+
+    private final SortKey sortKey;
+    private final boolean dedup;
+    private final long memoryBytes;
+    private final Path tempDir;
+
+    private long recordsRead;
+    private long recordsWritten;
+    private long rejected;
+    private int runCount;
+    private int mergePasses;
+
+    /**
+     * Constructor for DrugFileSorter
+     * @param sortKey column to sort by
+     * @param dedup true to keep only the last record for each drugId
+     * @param memoryBytes approximate heap to use for records and read buffers, at least 1 MB
+     * @param tempDir directory for run files, or null for the directory of the output file
+     */
+    public DrugFileSorter(SortKey sortKey, boolean dedup, long memoryBytes, Path tempDir) {
+        if (memoryBytes < 1024 * 1024) {
+            throw new IllegalArgumentException("Memory budget must be at least 1 MB, got: " + memoryBytes);
+        }
+        this.sortKey = sortKey;
+        this.dedup = dedup;
+        this.memoryBytes = memoryBytes;
+        this.tempDir = tempDir;
+    }
+
+    /**
+     * Sorts a drug file into a new file
+     * @param inputPath drug file to sort
+     * @param outputPath file to write; replaced if it exists, and may be the input file
+     * @return number of records written
+     * @throws IOException if file operations fail
+     */
+    public long sort(String inputPath, String outputPath) throws IOException {
+        long start = System.nanoTime();
+        recordsRead = 0;
+        recordsWritten = 0;
+        rejected = 0;
+        runCount = 0;
+        mergePasses = 0;
+
+        long bytesRead = Files.size(Paths.get(inputPath));
+        Path output = Paths.get(outputPath).toAbsolutePath();
+        Path workDir = tempDir != null ? tempDir : output.getParent();
+        Path staged = Files.createTempFile(workDir, output.getFileName() + ".", ".sorting");
+        try {
+            if (dedup && sortKey != SortKey.ID) {
+                // Last-writer-wins needs the records of one drugId next to each other
+                Path byId = Files.createTempFile(workDir, "drug-dedup-", ".txt");
+                try {
+                    sortFile(Paths.get(inputPath), byId, SortKey.ID.comparator(), true, workDir);
+                    long unique = recordsWritten;
+                    long read = recordsRead;
+                    sortFile(byId, staged, sortKey.comparator(), false, workDir);
+                    recordsRead = read;
+                    recordsWritten = unique;
+                } finally {
+                    Files.deleteIfExists(byId);
+                }
+            } else {
+                sortFile(Paths.get(inputPath), staged, sortKey.comparator(), dedup, workDir);
+            }
+            Files.move(staged, output, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(staged);
+            PersistenceMetrics.SORT_DRUGS.recordError(start);
+            PersistenceLog.error("Error sorting " + inputPath + ": " + e.getMessage());
+            throw e;
+        }
+
+        PersistenceMetrics.SORT_DRUGS.record(start, recordsWritten, bytesRead, Files.size(output));
+        if (PersistenceLog.isEnabled(PersistenceLog.Level.INFO)) {
+            PersistenceLog.info("Sorted " + recordsRead + " drug(s) from " + inputPath + " into " + outputPath +
+                    " (" + recordsWritten + " written, " + runCount + " run(s), " + mergePasses + " merge pass(es))");
+        }
+        return recordsWritten;
+    }
+
+    public long getRecordsRead() {
+        return recordsRead;
+    }
+
+    public long getRecordsWritten() {
+        return recordsWritten;
+    }
+
+    /**
+     * @return number of records dropped as older duplicates
+     */
+    public long getDuplicatesRemoved() {
+        return recordsRead - recordsWritten;
+    }
+
+    /**
+     * @return number of unparseable lines that were skipped
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    public int getRunCount() {
+        return runCount;
+    }
+
+    public int getMergePasses() {
+        return mergePasses;
+    }
+
+    private void sortFile(Path input, Path output, Comparator<Drug> order, boolean dedupIds, Path workDir) throws IOException {
+        List<Path> runs = new ArrayList<>();
+        try {
+            List<Drug> chunk = new ArrayList<>();
+            long chunkBytes = 0;
+            recordsRead = 0;
+            int readBuffer = (int) Math.min(MAX_READ_BUFFER, memoryBytes / 16);
+            // Records share the budget with the input reader and the run writer
+            long chunkBudget = memoryBytes - readerBytes(readBuffer) - readerBytes(OUTPUT_BUFFER);
+            try (BufferedReader reader = open(input, readBuffer)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        chunk.add(Drug.fromString(line));
+                    } catch (RuntimeException e) {
+                        rejected++;
+                        PersistenceLog.warn("Skipping unparseable line in " + input + ": " + line);
+                        continue;
+                    }
+                    recordsRead++;
+                    chunkBytes += DRUG_OVERHEAD_BYTES + 2L * line.length();
+                    if (chunkBytes >= chunkBudget) {
+                        runs.add(spill(chunk, order, dedupIds, workDir));
+                        chunk.clear();
+                        chunkBytes = 0;
+                    }
+                }
+            }
+
+            if (runs.isEmpty()) {
+                // Everything fit in memory: no run files needed
+                chunk.sort(order);
+                recordsWritten = write(chunk, output, dedupIds);
+                return;
+            }
+            if (!chunk.isEmpty()) {
+                runs.add(spill(chunk, order, dedupIds, workDir));
+            }
+            chunk = null;
+            runCount += runs.size();
+
+            int fanIn = (int) Math.max(2, Math.min(MAX_FAN_IN, mergeBudget() / readerBytes(MIN_READ_BUFFER)));
+            while (runs.size() > fanIn) {
+                // Merge consecutive groups so earlier runs stay ahead of later ones for equal keys
+                List<Path> merged = new ArrayList<>();
+                for (int i = 0; i < runs.size(); i += fanIn) {
+                    List<Path> group = runs.subList(i, Math.min(i + fanIn, runs.size()));
+                    Path run = Files.createTempFile(workDir, "drug-run-", ".txt");
+                    merged.add(run);
+                    merge(group, run, order, dedupIds);
+                    for (Path done : group) {
+                        Files.deleteIfExists(done);
+                    }
+                }
+                runs = merged;
+                mergePasses++;
+            }
+            recordsWritten = merge(runs, output, order, dedupIds);
+            mergePasses++;
+        } finally {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    private Path spill(List<Drug> chunk, Comparator<Drug> order, boolean dedupIds, Path workDir) throws IOException {
+        chunk.sort(order);
+        Path run = Files.createTempFile(workDir, "drug-run-", ".txt");
+        write(chunk, run, dedupIds);
+        return run;
+    }
+
+    private static long write(List<Drug> drugs, Path output, boolean dedupIds) throws IOException {
+        try (RunWriter writer = new RunWriter(output, dedupIds)) {
+            for (Drug drug : drugs) {
+                writer.add(drug);
+            }
+            return writer.finish();
+        }
+    }
+
+    /**
+     * Merges sorted runs; on equal keys the record from the earlier run comes first
+     */
+    private long merge(List<Path> runs, Path output, Comparator<Drug> order, boolean dedupIds) throws IOException {
+        long perRun = mergeBudget() / runs.size() - CODER_BUFFER_BYTES;
+        int bufferSize = (int) Math.max(MIN_READ_BUFFER, Math.min(MAX_READ_BUFFER, perRun / 2));
+        PriorityQueue<RunCursor> heap = new PriorityQueue<>(runs.size(),
+                Comparator.comparing((RunCursor c) -> c.current, order).thenComparingInt(c -> c.run));
+        List<RunCursor> cursors = new ArrayList<>(runs.size());
+        try (RunWriter writer = new RunWriter(output, dedupIds)) {
+            for (int i = 0; i < runs.size(); i++) {
+                RunCursor cursor = new RunCursor(open(runs.get(i), bufferSize), i);
+                cursors.add(cursor);
+                if (cursor.advance()) {
+                    heap.add(cursor);
+                }
+            }
+            while (!heap.isEmpty()) {
+                RunCursor cursor = heap.poll();
+                writer.add(cursor.current);
+                if (cursor.advance()) {
+                    heap.add(cursor);
+                }
+            }
+            return writer.finish();
+        } finally {
+            for (RunCursor cursor : cursors) {
+                cursor.reader.close();
+            }
+        }
+    }
+
+    /**
+     * Memory left for run readers during a merge once the output writer is accounted for
+     */
+    private long mergeBudget() {
+        return memoryBytes - readerBytes(OUTPUT_BUFFER);
+    }
+
+    /**
+     * Heap held by a buffered reader or writer: its char buffer plus the charset coder's byte buffer
+     */
+    private static long readerBytes(int bufferChars) {
+        return 2L * bufferChars + CODER_BUFFER_BYTES;
+    }
+
+    private static BufferedReader open(Path path, int bufferSize) throws IOException {
+        return new BufferedReader(new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8), bufferSize);
+    }
+
+    private static final class RunCursor {
+        final BufferedReader reader;
+        final int run;
+        Drug current;
+
+        RunCursor(BufferedReader reader, int run) {
+            this.reader = reader;
+            this.run = run;
+        }
+
+        boolean advance() throws IOException {
+            String line = reader.readLine();
+            current = line == null ? null : Drug.fromString(line);
+            return current != null;
+        }
+    }
+
+    /**
+     * Writes drugs in the order given; with dedup, a drug is held back until the next one
+     * shows that it was the last of its drugId
+     */
+    private static final class RunWriter implements Closeable {
+        private final BufferedWriter writer;
+        private final boolean dedupIds;
+        private Drug pending;
+        private long written;
+
+        RunWriter(Path output, boolean dedupIds) throws IOException {
+            this.writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(output), StandardCharsets.UTF_8), OUTPUT_BUFFER);
+            this.dedupIds = dedupIds;
+        }
+
+        void add(Drug drug) throws IOException {
+            if (!dedupIds) {
+                writeLine(drug);
+                return;
+            }
+            if (pending != null && pending.getDrugId() != drug.getDrugId()) {
+                writeLine(pending);
+            }
+            pending = drug;
+        }
+
+        long finish() throws IOException {
+            if (pending != null) {
+                writeLine(pending);
+                pending = null;
+            }
+            writer.flush();
+            return written;
+        }
+
+        private void writeLine(Drug drug) throws IOException {
+            writer.write(drug.toString());
+            writer.newLine();
+            written++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    /**
+     * Parses a size such as 512k, 64m or 2g
+     * @param value size with an optional k, m or g suffix
+     * @return size in bytes
+     */
+    static long parseSize(String value) {
+        String v = value.trim().toLowerCase(Locale.ROOT);
+        long unit = 1;
+        if (v.endsWith("k")) {
+            unit = 1024;
+        } else if (v.endsWith("m")) {
+            unit = 1024 * 1024;
+        } else if (v.endsWith("g")) {
+            unit = 1024L * 1024 * 1024;
+        }
+        if (unit > 1) {
+            v = v.substring(0, v.length() - 1);
+        }
+        return Long.parseLong(v) * unit;
+    }
+
+    public static void main(String[] args) {
+        String input = null;
+        String output = null;
+        SortKey key = SortKey.ID;
+        boolean dedup = false;
+        long memory = DEFAULT_MEMORY_BYTES;
+        Path tempDir = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--input":
+                        input = args[++i];
+                        break;
+                    case "--output":
+                        output = args[++i];
+                        break;
+                    case "--by":
+                        key = SortKey.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                        break;
+                    case "--dedup":
+                        dedup = true;
+                        break;
+                    case "--memory":
+                        memory = parseSize(args[++i]);
+                        break;
+                    case "--temp-dir":
+                        tempDir = Paths.get(args[++i]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option " + args[i]);
+                }
+            }
+            if (input == null || output == null) {
+                throw new IllegalArgumentException("--input and --output are required");
+            }
+        } catch (RuntimeException e) {
+            System.out.println("Invalid arguments: " + e.getMessage());
+            System.out.println("Usage: java DrugFileSorter --input FILE --output FILE [--by id|name|cost|dosage] " +
+                    "[--dedup] [--memory SIZE] [--temp-dir DIR]");
+            System.exit(2);
+        }
+
+        try {
+            long start = System.nanoTime();
+            DrugFileSorter sorter = new DrugFileSorter(key, dedup, memory, tempDir);
+            sorter.sort(input, output);
+            PersistenceLog.flush();
+            System.out.printf("Sorted %d drug(s) by %s into %d record(s): %d duplicate(s) removed, %d rejected, " +
+                            "%d run(s), %d merge pass(es), %.2f s%n",
+                    sorter.getRecordsRead(), key.name().toLowerCase(Locale.ROOT), sorter.getRecordsWritten(),
+                    sorter.getDuplicatesRemoved(), sorter.getRejected(), sorter.getRunCount(), sorter.getMergePasses(),
+                    (System.nanoTime() - start) / 1e9);
+        } catch (Exception e) {
+            PersistenceLog.flush();
+            System.out.println("Sort failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
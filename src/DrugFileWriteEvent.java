@@ -0,0 +1,30 @@
+import jdk.jfr.*;
+
+/**
+ * JFR event emitted by FileManager.saveDrug for every record appended to a drug file, and by
+ * FileManager.saveDrugs once per batch. ShardedDrugStore emits one per shard file it appends to.
+ * Failed writes are emitted too, with success false.
+ */
+@Name("qap4.DrugFileWrite")
+@Label("Drug File Write")
+@Description("Drug records appended to a drug data file or shard")
+@Category({"QAP4", "File"})
+@StackTrace(false)
+public class DrugFileWriteEvent extends Event {
+    @Label("File Path")
+    public String filePath;
+
+    @Label("Rows")
+    public int rowCount;
+
+    @Label("Bytes Written")
+    @DataAmount
+    public long byteCount;
+
+    @Label("Success")
+    public boolean success;
+
+    @Label("Error")
+    @Description("Exception that failed the operation, or null")
+    public String error;
+}
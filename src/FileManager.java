@@ -7,6 +7,7 @@ import java.util.*;
  */
 public class FileManager {
     private static final String FILE_PATH = "drug_data.txt";
+    private static final int BULK_BUFFER_SIZE = 64 * 1024;
 
     /**
      * Saves a Drug object to the text file
@@ -14,10 +15,99 @@ public class FileManager {
      * @throws IOException if file operations fail
      */
     public static void saveDrug(Drug drug) throws IOException {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(FILE_PATH, true))) {
-            writer.write(drug.toString());
+        saveDrug(drug, FILE_PATH);
+    }
+
+    /**
+     * Saves a Drug object to the given text file
+     * @param drug Drug object to save
+     * @param filePath path of the file to append to
+     * @throws IOException if file operations fail
+     */
+    public static void saveDrug(Drug drug, String filePath) throws IOException {
+        long start = System.nanoTime();
+        DrugFileWriteEvent event = new DrugFileWriteEvent();
+        event.begin();
+        String line = drug.toString();
+        long bytesWritten = 0;
+        Exception failure = null;
+        
+        try (CountingOutputStream out = new CountingOutputStream(new FileOutputStream(filePath, true));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out))) {
+            writer.write(line);
             writer.newLine();
-            System.out.println("Drug saved successfully to " + FILE_PATH);
+            writer.flush();
+            bytesWritten = out.getCount();
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+            PersistenceMetrics.SAVE_DRUG.recordError(start);
+            throw e;
+        } finally {
+            // Committed for failures too, so slow failing writes show up in recordings
+            if (event.shouldCommit()) {
+                event.filePath = filePath;
+                event.rowCount = failure == null ? 1 : 0;
+                event.byteCount = failure == null ? bytesWritten : 0;
+                event.success = failure == null;
+                event.error = failure == null ? null : failure.toString();
+                event.commit();
+            }
+        }
+        
+        PersistenceMetrics.SAVE_DRUG.record(start, 1, 0, bytesWritten);
+        if (PersistenceLog.isEnabled(PersistenceLog.Level.INFO)) {
+            PersistenceLog.info("Drug saved successfully to " + filePath);
+        }
+    }
+
+    /**
+     * Appends many Drug objects to the text file in one write
+     * @param drugs Drug objects to save
+     * @throws IOException if file operations fail
+     */
+    public static void saveDrugs(List<Drug> drugs) throws IOException {
+        saveDrugs(drugs, FILE_PATH);
+    }
+
+    /**
+     * Appends many Drug objects to the given text file, opening it only once
+     * @param drugs Drug objects to save
+     * @param filePath path of the file to append to
+     * @throws IOException if file operations fail
+     */
+    public static void saveDrugs(List<Drug> drugs, String filePath) throws IOException {
+        long start = System.nanoTime();
+        DrugFileWriteEvent event = new DrugFileWriteEvent();
+        event.begin();
+        long bytesWritten = 0;
+        Exception failure = null;
+        
+        try (CountingOutputStream out = new CountingOutputStream(new FileOutputStream(filePath, true));
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out), BULK_BUFFER_SIZE)) {
+            for (Drug drug : drugs) {
+                writer.write(drug.toString());
+                writer.newLine();
+            }
+            writer.flush();
+            bytesWritten = out.getCount();
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+            PersistenceMetrics.SAVE_DRUGS.recordError(start);
+            throw e;
+        } finally {
+            if (event.shouldCommit()) {
+                event.filePath = filePath;
+                event.rowCount = failure == null ? drugs.size() : 0;
+                event.byteCount = failure == null ? bytesWritten : 0;
+                event.success = failure == null;
+                event.error = failure == null ? null : failure.toString();
+                event.commit();
+            }
+        }
+        
+        PersistenceMetrics.SAVE_DRUGS.record(start, drugs.size(), 0, bytesWritten);
+        if (PersistenceLog.isEnabled(PersistenceLog.Level.INFO)) {
+            PersistenceLog.info(drugs.size() + " drug(s) saved successfully to " + filePath);
         }
     }
 
@@ -27,36 +117,109 @@ public class FileManager {
      * @throws IOException if file operations fail
      */
     public static List<Drug> readAllDrugs() throws IOException {
+        return readAllDrugs(FILE_PATH);
+    }
+
+    /**
+     * Reads all Drug objects from the given text file
+     * @param filePath path of the file to read
+     * @return List of Drug objects
+     * @throws IOException if file operations fail
+     */
+    public static List<Drug> readAllDrugs(String filePath) throws IOException {
+        long start = System.nanoTime();
+        DrugFileReadEvent event = new DrugFileReadEvent();
+        event.begin();
         List<Drug> drugs = new ArrayList<>();
-        File file = new File(FILE_PATH);
+        File file = new File(filePath);
         
         if (!file.exists()) {
-            System.out.println("No drug data file found. File will be created when first drug is saved.");
+            PersistenceMetrics.READ_ALL_DRUGS.record(start, 0, 0, 0);
+            if (event.shouldCommit()) {
+                event.filePath = filePath;
+                event.success = true;
+                event.commit();
+            }
+            PersistenceLog.info("No drug data file found. File will be created when first drug is saved.");
             return drugs;
         }
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(FILE_PATH))) {
+        // The whole file is read, so its size is the exact byte count
+        long bytesRead = file.length();
+        Exception failure = null;
+        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
             String line;
             while ((line = reader.readLine()) != null) {
                 if (!line.trim().isEmpty()) {
                     try {
                         drugs.add(Drug.fromString(line));
                     } catch (Exception e) {
-                        System.out.println("Error parsing line: " + line + " - " + e.getMessage());
+                        PersistenceLog.warn("Error parsing line: " + line + " - " + e.getMessage());
                     }
                 }
             }
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+            PersistenceMetrics.READ_ALL_DRUGS.recordError(start);
+            throw e;
+        } finally {
+            if (event.shouldCommit()) {
+                event.filePath = filePath;
+                event.rowCount = drugs.size();
+                event.byteCount = bytesRead;
+                event.success = failure == null;
+                event.error = failure == null ? null : failure.toString();
+                event.commit();
+            }
         }
+        PersistenceMetrics.READ_ALL_DRUGS.record(start, drugs.size(), bytesRead, 0);
         
         if (drugs.isEmpty()) {
-            System.out.println("No drugs found in the file.");
-        } else {
-            System.out.println("Found " + drugs.size() + " drug(s) in the file:");
+            PersistenceLog.info("No drugs found in the file.");
+        } else if (PersistenceLog.isEnabled(PersistenceLog.Level.INFO)) {
+            PersistenceLog.info("Found " + drugs.size() + " drug(s) in the file:");
         }
         
         return drugs;
     }
 
+    /**
+     * Writes a copy of the drug data file sorted by drugId with only the last record of each id,
+     * using at most DrugFileSorter.DEFAULT_MEMORY_BYTES of heap
+     * @param outputPath file to write; may be the drug data file itself to compact it in place
+     * @return number of records written
+     * @throws IOException if file operations fail
+     */
+    public static long sortDrugs(String outputPath) throws IOException {
+        return sortDrugs(FILE_PATH, outputPath, DrugFileSorter.SortKey.ID, true, DrugFileSorter.DEFAULT_MEMORY_BYTES);
+    }
+
+    /**
+     * Sorts a drug file of any size with an external merge sort, spilling sorted runs to
+     * temporary files next to the output and merging them
+     * @param inputPath drug file to sort
+     * @param outputPath file to write; may be the input file
+     * @param sortKey column to sort by; equal keys keep their file order
+     * @param dedup true to keep only the last record for each drugId
+     * @param memoryBytes approximate heap to use, at least 1 MB
+     * @return number of records written
+     * @throws IOException if file operations fail
+     */
+    public static long sortDrugs(String inputPath, String outputPath, DrugFileSorter.SortKey sortKey,
+                                 boolean dedup, long memoryBytes) throws IOException {
+        return new DrugFileSorter(sortKey, dedup, memoryBytes, null).sort(inputPath, outputPath);
+    }
+
+    /**
+     * Opens the drug data file in sharded mode, partitioned by drugId hash.
+     * Existing unsharded data can be moved over with the ShardedDrugStore re-shard tool.
+     * @param shardCount number of shard files
+     * @return sharded store; close it to release the shard writers
+     */
+    public static ShardedDrugStore sharded(int shardCount) {
+        return new ShardedDrugStore(FILE_PATH, shardCount);
+    }
+
     /**
      * Checks if the drug data file exists
      * @return true if file exists, false otherwise
@@ -0,0 +1,398 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Multi-threaded workload driver for soak and saturation testing.
+ * Runs a weighted mix of drug saves, drug reads, patient inserts and patient queries
+ * on N threads for a fixed duration or operation count, then reports throughput,
+ * latency percentiles and error rates and optionally writes them as CSV or JSON.
+ *
+ * Usage:
+ *   java LoadGenerator [--threads 8] [--duration 60 | --operations 100000]
+ *                      [--mix saveDrug=40,readDrugs=10,savePatient=40,queryPatients=10]
+ *                      [--drug-file loadtest_drug_data.txt] [--shards N] [--patient-id-start ID]
+ *                      [--keep-patients] [--output results.csv|results.json] [--verbose]
+ *
+ * The drug file (or its shards) is recreated at the start of every run, and patient ids start
+ * after the highest id already in the table unless --patient-id-start is given. The patients a
+ * run inserts are deleted when it finishes unless --keep-patients is given, so the table, and with
+ * it the cost of queryPatients, is the same for every run against the same database.
+ */
+public class LoadGenerator {
+    private static final String[] OPERATIONS = {"saveDrug", "readDrugs", "savePatient", "queryPatients"};
+    private static final int SAVE_DRUG = 0;
+    private static final int READ_DRUGS = 1;
+    private static final int SAVE_PATIENT = 2;
+    private static final int QUERY_PATIENTS = 3;
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long durationSeconds = 30;
+    private long operationLimit = 0;
+    private final int[] weights = {40, 10, 40, 10};
+    private String drugFile = "loadtest_drug_data.txt";
+    private int shards = 0;
+    // 0 means start after the highest existing patient id
+    private int patientIdStart = 0;
+    private boolean keepPatients;
+    private String outputPath;
+    private boolean verbose;
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+    private final LongAdder[] errors = new LongAdder[OPERATIONS.length];
+    private final AtomicInteger nextDrugId = new AtomicInteger(1);
+    private AtomicInteger nextPatientId;
+    private int firstPatientId;
+    // Offsets from firstPatientId of the patients this run inserted; guarded by itself
+    private final BitSet insertedPatients = new BitSet();
+    private ShardedDrugStore shardedStore;
+    private AtomicLong remainingOperations;
+    private volatile long deadlineNanos;
+    private long elapsedNanos;
+
+    public static void main(String[] args) {
+        LoadGenerator generator = new LoadGenerator();
+        try {
+            generator.parseArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid arguments: " + e.getMessage());
+            System.out.println("Usage: java LoadGenerator [--threads N] [--duration SECONDS | --operations N] " +
+                    "[--mix saveDrug=40,readDrugs=10,savePatient=40,queryPatients=10] " +
+                    "[--drug-file PATH] [--shards N] [--patient-id-start ID] [--keep-patients] " +
+                    "[--output FILE.csv|FILE.json] [--verbose]");
+            System.exit(1);
+        }
+
+        try {
+            generator.run();
+            generator.printReport(System.out);
+            if (generator.outputPath != null) {
+                generator.writeResults(generator.outputPath);
+                System.out.println("Results written to " + generator.outputPath);
+            }
+        } catch (Exception e) {
+            System.out.println("Load test error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Parses command line options
+     * @param args command line arguments
+     */
+    private void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--threads":
+                    threads = Integer.parseInt(value(args, ++i, arg));
+                    break;
+                case "--duration":
+                    durationSeconds = Long.parseLong(value(args, ++i, arg));
+                    operationLimit = 0;
+                    break;
+                case "--operations":
+                    operationLimit = Long.parseLong(value(args, ++i, arg));
+                    break;
+                case "--mix":
+                    parseMix(value(args, ++i, arg));
+                    break;
+                case "--drug-file":
+                    drugFile = value(args, ++i, arg);
+                    break;
+                case "--shards":
+                    shards = Integer.parseInt(value(args, ++i, arg));
+                    break;
+                case "--patient-id-start":
+                    patientIdStart = Integer.parseInt(value(args, ++i, arg));
+                    if (patientIdStart <= 0) {
+                        throw new IllegalArgumentException("--patient-id-start must be positive");
+                    }
+                    break;
+                case "--keep-patients":
+                    keepPatients = true;
+                    break;
+                case "--output":
+                    outputPath = value(args, ++i, arg);
+                    break;
+                case "--verbose":
+                    verbose = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + arg);
+            }
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("--threads must be positive");
+        }
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(option + " requires a value");
+        }
+        return args[index];
+    }
+
+    /**
+     * Parses a mix such as "saveDrug=40,readDrugs=10"; operations not listed get weight 0
+     * @param mix comma separated operation=weight pairs
+     */
+    private void parseMix(String mix) {
+        Arrays.fill(weights, 0);
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split("=");
+            int index = Arrays.asList(OPERATIONS).indexOf(pair[0]);
+            if (index < 0 || pair.length != 2) {
+                throw new IllegalArgumentException("bad mix entry " + part);
+            }
+            weights[index] = Integer.parseInt(pair[1]);
+            if (weights[index] < 0) {
+                throw new IllegalArgumentException("mix weight must not be negative: " + part);
+            }
+        }
+        if (Arrays.stream(weights).sum() <= 0) {
+            throw new IllegalArgumentException("mix must have at least one positive weight");
+        }
+    }
+
+    /**
+     * Runs the workload on all threads and waits for them to finish
+     * @throws Exception if the worker threads cannot be run
+     */
+    private void run() throws Exception {
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            latencies[i] = new LatencyHistogram();
+            errors[i] = new LongAdder();
+        }
+        remainingOperations = new AtomicLong(operationLimit > 0 ? operationLimit : Long.MAX_VALUE);
+
+        // Start every run from an empty drug file so read times do not grow from run to run
+        if (shards > 0) {
+            shardedStore = new ShardedDrugStore(drugFile, shards);
+            shardedStore.deleteFiles();
+        } else {
+            new File(drugFile).delete();
+        }
+        firstPatientId = patientIdStart;
+        if (weights[SAVE_PATIENT] > 0 || weights[QUERY_PATIENTS] > 0) {
+            DatabaseManager.createTableIfNotExists();
+            if (firstPatientId == 0) {
+                firstPatientId = DatabaseManager.getMaxPatientId() + 1;
+            }
+        }
+        firstPatientId = Math.max(firstPatientId, 1);
+        nextPatientId = new AtomicInteger(firstPatientId);
+
+        System.out.println("=== Load Test ===");
+        System.out.println("Threads: " + threads + ", " +
+                (operationLimit > 0 ? operationLimit + " operations" : durationSeconds + " seconds"));
+        System.out.println("Mix: " + describeMix());
+        if (shards > 0) {
+            System.out.println("Drug file shards: " + shards);
+        }
+
+        PersistenceLog.Level logLevel = PersistenceLog.getLevel();
+        if (!verbose) {
+            PersistenceLog.setLevel(PersistenceLog.Level.OFF);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch startSignal = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                workers.add(executor.submit(() -> {
+                    startSignal.await();
+                    runWorker();
+                    return null;
+                }));
+            }
+
+            long start = System.nanoTime();
+            deadlineNanos = operationLimit > 0 ? Long.MAX_VALUE : start + TimeUnit.SECONDS.toNanos(durationSeconds);
+            startSignal.countDown();
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+            elapsedNanos = System.nanoTime() - start;
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            PersistenceLog.setLevel(logLevel);
+            if (shardedStore != null) {
+                shardedStore.close();
+            }
+            if (!keepPatients) {
+                deleteInsertedPatients();
+            }
+        }
+    }
+
+    /**
+     * Deletes the patients this run inserted, leaving rows that were already in the table
+     */
+    private void deleteInsertedPatients() {
+        synchronized (insertedPatients) {
+            if (insertedPatients.isEmpty()) {
+                return;
+            }
+            try {
+                int deleted = DatabaseManager.inTransaction(tx -> {
+                    for (int i = insertedPatients.nextSetBit(0); i >= 0; i = insertedPatients.nextSetBit(i + 1)) {
+                        tx.deletePatient(firstPatientId + i);
+                    }
+                });
+                System.out.println("Deleted " + deleted + " patient(s) inserted by the load test");
+            } catch (java.sql.SQLException | RuntimeException e) {
+                System.out.println("Could not delete the load test patients: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Executes operations until the deadline passes or the operation budget is used up
+     */
+    private void runWorker() {
+        int totalWeight = Arrays.stream(weights).sum();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        while (System.nanoTime() < deadlineNanos && remainingOperations.getAndDecrement() > 0) {
+            int pick = random.nextInt(totalWeight);
+            int op = 0;
+            while (pick >= weights[op]) {
+                pick -= weights[op];
+                op++;
+            }
+
+            long start = System.nanoTime();
+            try {
+                execute(op);
+            } catch (Exception e) {
+                errors[op].increment();
+            }
+            latencies[op].record(System.nanoTime() - start);
+        }
+    }
+
+    private void execute(int op) throws Exception {
+        switch (op) {
+            case SAVE_DRUG:
+                int drugId = nextDrugId.getAndIncrement();
+                Drug drug = new Drug(drugId, "LoadDrug" + drugId, 9.99, "100mg");
+                if (shardedStore != null) {
+                    shardedStore.saveDrug(drug);
+                } else {
+                    FileManager.saveDrug(drug, drugFile);
+                }
+                break;
+            case READ_DRUGS:
+                if (shardedStore != null) {
+                    shardedStore.readAllDrugs();
+                } else {
+                    FileManager.readAllDrugs(drugFile);
+                }
+                break;
+            case SAVE_PATIENT:
+                int patientId = nextPatientId.getAndIncrement();
+                DatabaseManager.savePatient(new Patient(patientId, "Load", "Patient" + patientId, "1990-01-01"));
+                synchronized (insertedPatients) {
+                    insertedPatients.set(patientId - firstPatientId);
+                }
+                break;
+            case QUERY_PATIENTS:
+                DatabaseManager.getAllPatients();
+                break;
+            default:
+                throw new IllegalStateException("Unknown operation " + op);
+        }
+    }
+
+    private String describeMix() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            if (weights[i] > 0) {
+                sb.append(sb.length() > 0 ? ", " : "").append(OPERATIONS[i]).append('=').append(weights[i]);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Prints throughput, latency percentiles and error rates per operation
+     * @param out stream to print to
+     */
+    private void printReport(PrintStream out) {
+        double seconds = elapsedNanos / 1e9;
+        long total = 0;
+        long totalErrors = 0;
+
+        out.printf("%nElapsed: %.1f s%n", seconds);
+        out.println("Operation\tCount\tErrors\tOps/s\t\tp50(us)\tp99(us)\tp999(us)\tmax(us)");
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            long count = latencies[i].getCount();
+            if (count == 0) {
+                continue;
+            }
+            total += count;
+            totalErrors += errors[i].sum();
+            out.printf("%-14s\t%d\t%d\t%.1f\t\t%.1f\t%.1f\t%.1f\t\t%.1f%n",
+                    OPERATIONS[i], count, errors[i].sum(), count / seconds,
+                    latencies[i].percentile(50) / 1000.0,
+                    latencies[i].percentile(99) / 1000.0,
+                    latencies[i].percentile(99.9) / 1000.0,
+                    latencies[i].getMax() / 1000.0);
+        }
+        out.printf("Total: %d operations, %.1f ops/s, error rate %.2f%%%n",
+                total, total / seconds, total == 0 ? 0.0 : totalErrors * 100.0 / total);
+    }
+
+    /**
+     * Writes the per-operation results as JSON when the path ends in .json, CSV otherwise
+     * @param path output file path
+     * @throws IOException if the file cannot be written
+     */
+    private void writeResults(String path) throws IOException {
+        boolean json = path.toLowerCase().endsWith(".json");
+        double seconds = elapsedNanos / 1e9;
+
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(path)))) {
+            if (json) {
+                writer.printf(Locale.ROOT, "{\"threads\": %d, \"elapsedSeconds\": %.3f, \"operations\": [%n", threads, seconds);
+            } else {
+                writer.println("operation,threads,elapsed_s,count,errors,error_rate,ops_per_s,p50_us,p99_us,p999_us,max_us");
+            }
+
+            boolean first = true;
+            for (int i = 0; i < OPERATIONS.length; i++) {
+                long count = latencies[i].getCount();
+                if (count == 0) {
+                    continue;
+                }
+                long errorCount = errors[i].sum();
+                double errorRate = errorCount / (double) count;
+                double p50 = latencies[i].percentile(50) / 1000.0;
+                double p99 = latencies[i].percentile(99) / 1000.0;
+                double p999 = latencies[i].percentile(99.9) / 1000.0;
+                double max = latencies[i].getMax() / 1000.0;
+
+                if (json) {
+                    writer.printf(Locale.ROOT, "%s  {\"operation\": \"%s\", \"count\": %d, \"errors\": %d, \"errorRate\": %.5f, " +
+                                    "\"opsPerSecond\": %.1f, \"p50Micros\": %.1f, \"p99Micros\": %.1f, \"p999Micros\": %.1f, \"maxMicros\": %.1f}",
+                            first ? "" : "," + System.lineSeparator(), OPERATIONS[i], count, errorCount, errorRate,
+                            count / seconds, p50, p99, p999, max);
+                } else {
+                    writer.printf(Locale.ROOT, "%s,%d,%.3f,%d,%d,%.5f,%.1f,%.1f,%.1f,%.1f,%.1f%n",
+                            OPERATIONS[i], threads, seconds, count, errorCount, errorRate,
+                            count / seconds, p50, p99, p999, max);
+                }
+                first = false;
+            }
+
+            if (json) {
+                writer.printf("%n]}%n");
+            }
+        }
+    }
+}
@@ -8,10 +8,19 @@ public class Main {
     private static Scanner scanner = new Scanner(System.in);
 
     public static void main(String[] args) {
+        if (args.length > 0) {
+            System.exit(BatchMode.run(args));
+        }
+
         System.out.println("=== QAP 4 - Advanced Java: Data Persistence ===");
         System.out.println("This application manages Drug and Patient data.");
         System.out.println("Drugs are stored in text files, Patients in PostgreSQL database.\n");
 
+        // Status messages are printed by the menu actions; only show library warnings and errors
+        if (System.getProperty("qap4.log.level") == null) {
+            PersistenceLog.setLevel(PersistenceLog.Level.WARN);
+        }
+
         while (true) {
             displayMenu();
             int choice = getChoice();
@@ -33,6 +42,9 @@ public class Main {
                     case 5:
                         testDatabaseConnection();
                         break;
+                    case 6:
+                        showPersistenceMetrics();
+                        break;
                     case 0:
                         System.out.println("Goodbye!");
                         return;
@@ -44,6 +56,7 @@ public class Main {
                 System.out.println("Please try again.\n");
             }
 
+            PersistenceLog.flush();
             System.out.println("\nPress Enter to continue...");
             scanner.nextLine();
         }
@@ -59,6 +72,7 @@ public class Main {
         System.out.println("3. Save Patient to database");
         System.out.println("4. Read all Patients from database");
         System.out.println("5. Test database connection");
+        System.out.println("6. Show persistence metrics");
         System.out.println("0. Exit");
         System.out.print("Choose an option: ");
     }
@@ -101,6 +115,7 @@ public class Main {
             
             Drug drug = new Drug(drugId, drugName, drugCost, dosage);
             FileManager.saveDrug(drug);
+            System.out.println("Drug saved successfully to file!");
             
         } catch (Exception e) {
             System.out.println("Error creating drug: " + e.getMessage());
@@ -115,9 +130,17 @@ public class Main {
         System.out.println("\n=== Read Drugs from File ===");
         
         try {
+            if (!FileManager.fileExists()) {
+                System.out.println("No drug data file found. File will be created when first drug is saved.");
+                return;
+            }
+            
             List<Drug> drugs = FileManager.readAllDrugs();
             
-            if (!drugs.isEmpty()) {
+            if (drugs.isEmpty()) {
+                System.out.println("No drugs found in the file.");
+            } else {
+                System.out.println("Found " + drugs.size() + " drug(s) in the file:");
                 System.out.println("\nDrug List:");
                 System.out.println("ID\tName\t\tCost\tDosage");
                 System.out.println("---\t----\t\t----\t------");
@@ -159,6 +182,7 @@ public class Main {
             
             DatabaseManager.createTableIfNotExists();
             DatabaseManager.savePatient(patient);
+            System.out.println("Patient saved successfully to database!");
             
         } catch (Exception e) {
             System.out.println("Error saving patient: " + e.getMessage());
@@ -175,7 +199,10 @@ public class Main {
         try {
             List<Patient> patients = DatabaseManager.getAllPatients();
             
-            if (!patients.isEmpty()) {
+            if (patients.isEmpty()) {
+                System.out.println("No patients found in the database.");
+            } else {
+                System.out.println("Found " + patients.size() + " patient(s) in the database:");
                 System.out.println("\nPatient List:");
                 System.out.println("ID\tFirst Name\tLast Name\tDate of Birth");
                 System.out.println("---\t----------\t---------\t-------------");
@@ -200,4 +227,12 @@ public class Main {
         System.out.println("\n=== Test Database Connection ===");
         DatabaseManager.testConnection();
     }
+
+    /**
+     * Shows latency and throughput metrics for file and database operations
+     */
+    private static void showPersistenceMetrics() {
+        System.out.println();
+        System.out.println(PersistenceMetrics.dump());
+    }
 }
@@ -0,0 +1,116 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * OperationMetrics tracks latency, throughput and errors for one persistence operation
+ * such as FileManager.saveDrug or DatabaseManager.getAllPatients.
+ * Recording does not allocate once the counters have warmed up.
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+
+    /**
+     * Constructor for OperationMetrics
+     * @param name operation name used in JMX and text dumps
+     */
+    public OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records a successful call
+     * @param startNanos value of System.nanoTime() taken when the call started
+     * @param rowCount number of records written or read
+     * @param bytesIn number of bytes read
+     * @param bytesOut number of bytes written
+     */
+    public void record(long startNanos, long rowCount, long bytesIn, long bytesOut) {
+        latency.record(System.nanoTime() - startNanos);
+        rows.add(rowCount);
+        bytesRead.add(bytesIn);
+        bytesWritten.add(bytesOut);
+    }
+
+    /**
+     * Records a failed call
+     * @param startNanos value of System.nanoTime() taken when the call started
+     */
+    public void recordError(long startNanos) {
+        latency.record(System.nanoTime() - startNanos);
+        errors.increment();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public double getP50Micros() {
+        return latency.percentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return latency.percentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getP999Micros() {
+        return latency.percentile(99.9) / 1000.0;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return latency.getMax() / 1000.0;
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+        errors.reset();
+        rows.reset();
+        bytesRead.reset();
+        bytesWritten.reset();
+    }
+
+    /**
+     * Formats the current values as a single line of text
+     * @return summary line
+     */
+    @Override
+    public String toString() {
+        return String.format("%-16s count=%d errors=%d rows=%d bytesRead=%d bytesWritten=%d " +
+                        "p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus",
+                name, getCount(), getErrors(), getRows(), getBytesRead(), getBytesWritten(),
+                getP50Micros(), getP99Micros(), getP999Micros(), getMaxMicros());
+    }
+}
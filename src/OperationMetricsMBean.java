@@ -0,0 +1,25 @@
+/**
+ * JMX management interface for the metrics of a single persistence operation.
+ * Latencies are reported in microseconds.
+ */
+public interface OperationMetricsMBean {
+    long getCount();
+
+    long getErrors();
+
+    long getRows();
+
+    long getBytesRead();
+
+    long getBytesWritten();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+
+    void reset();
+}
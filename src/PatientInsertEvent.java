@@ -0,0 +1,29 @@
+import jdk.jfr.*;
+
+/**
+ * JFR event emitted by DatabaseManager.savePatient, savePatients and saveCompactPatients for every
+ * insert or insert batch, including failed ones.
+ */
+@Name("qap4.PatientInsert")
+@Label("Patient Insert")
+@Description("Patient rows inserted by DatabaseManager")
+@Category({"QAP4", "Database"})
+@StackTrace(false)
+public class PatientInsertEvent extends Event {
+    @Label("SQL")
+    public String sql;
+
+    @Label("Patient ID")
+    @Description("Inserted patient, or 0 for a batch")
+    public int patientId;
+
+    @Label("Rows")
+    public int rowCount;
+
+    @Label("Success")
+    public boolean success;
+
+    @Label("Error")
+    @Description("Exception that failed the operation, or null")
+    public String error;
+}
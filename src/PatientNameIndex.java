@@ -0,0 +1,667 @@
+import java.io.Closeable;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * In-memory fuzzy name index over the patients table for misspelled name lookups.
+ * Each patient's name is split into words and indexed by trigrams (as in pg_trgm, with
+ * two leading and one trailing space per word) and by the Soundex and Metaphone key of every word.
+ * A search scores candidates by trigram similarity plus a bonus for each query word that
+ * sounds like one of the patient's words, and returns the best K.
+ *
+ * Searches run concurrently under a read lock; saves and deletes take the write lock, so a
+ * search never sees a half-indexed patient. load() builds its structures without any lock and
+ * queues the changes that arrive meanwhile, so concurrent saves never wait for the table scan.
+ * An index created with load() follows DatabaseManager saves and deletes made in this JVM
+ * until it is closed.
+ */
+public class PatientNameIndex implements Closeable, DatabaseManager.PatientChangeListener {
+    private static final double TRIGRAM_WEIGHT = 0.7;
+    private static final double PHONETIC_WEIGHT = 0.3;
+
+    // Guarded by lock; load() replaces it as a whole
+    private Tables tables = new Tables();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+    // Changes reported while load() streams the table, or null once it has finished
+    private List<Consumer<Tables>> pendingChanges;
+    private final Object pendingLock = new Object();
+
+    /**
+     * Builds an index from every patient in the database and keeps it up to date with
+     * later DatabaseManager saves and deletes
+     * @return loaded index
+     * @throws SQLException if database operations fail
+     */
+    public static PatientNameIndex load() throws SQLException {
+        PatientNameIndex index = new PatientNameIndex();
+        synchronized (index.pendingLock) {
+            index.pendingChanges = new ArrayList<>();
+        }
+        // Listen first so patients saved while the table is streamed are not missed
+        DatabaseManager.addPatientChangeListener(index);
+        try {
+            Tables loaded = new Tables();
+            DatabaseManager.streamPatients(Integer.MIN_VALUE, (id, first, last, dob) -> loaded.put(id, first, last));
+            index.lock.writeLock().lock();
+            try {
+                synchronized (index.pendingLock) {
+                    // Replayed in arrival order, so a queued save or delete wins over the streamed row
+                    for (Consumer<Tables> change : index.pendingChanges) {
+                        change.accept(loaded);
+                    }
+                    index.pendingChanges = null;
+                }
+                index.tables = loaded;
+            } finally {
+                index.lock.writeLock().unlock();
+            }
+        } catch (SQLException | RuntimeException e) {
+            DatabaseManager.removePatientChangeListener(index);
+            throw e;
+        }
+        if (PersistenceLog.isEnabled(PersistenceLog.Level.INFO)) {
+            PersistenceLog.info("Patient name index loaded with " + index.size() + " patient(s).");
+        }
+        return index;
+    }
+
+    /**
+     * Adds a patient or replaces the names indexed for its id
+     * @param patientId patient identifier
+     * @param firstName first name
+     * @param lastName last name
+     */
+    public void put(int patientId, String firstName, String lastName) {
+        lock.writeLock().lock();
+        try {
+            tables.put(patientId, firstName, lastName);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a patient from the index
+     * @param patientId patient identifier
+     * @return true if the patient was indexed
+     */
+    public boolean remove(int patientId) {
+        lock.writeLock().lock();
+        try {
+            return tables.remove(patientId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void patientSaved(int patientId, String firstName, String lastName, int dobEpochDay) {
+        if (!queueWhileLoading(t -> t.put(patientId, firstName, lastName))) {
+            put(patientId, firstName, lastName);
+        }
+    }
+
+    @Override
+    public void patientDeleted(int patientId) {
+        if (!queueWhileLoading(t -> t.remove(patientId))) {
+            remove(patientId);
+        }
+    }
+
+    private boolean queueWhileLoading(Consumer<Tables> change) {
+        synchronized (pendingLock) {
+            if (pendingChanges == null) {
+                return false;
+            }
+            pendingChanges.add(change);
+            return true;
+        }
+    }
+
+    /**
+     * @return number of indexed patients
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return tables.byId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the patients whose names best match a possibly misspelled query
+     * @param query one or more name words, e.g. "jon smyth"
+     * @param limit maximum number of matches to return
+     * @return matches ordered from best to worst, empty if nothing is similar
+     */
+    public List<Match> search(String query, int limit) {
+        List<String> words = words(query);
+        if (words.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        long[] queryGrams = trigrams(words);
+        int phoneticWords = Math.min(words.size(), 32);
+        String[][] queryKeys = new String[phoneticWords][];
+        for (int w = 0; w < phoneticWords; w++) {
+            queryKeys[w] = phoneticKeys(words.get(w));
+        }
+
+        List<Match> matches = new ArrayList<>(limit);
+        Scratch s = scratch.get();
+        lock.readLock().lock();
+        try {
+            Tables t = tables;
+            s.ensureCapacity(t.slotCount);
+            for (long gram : queryGrams) {
+                List<Name> postings = t.byTrigram.get(gram);
+                if (postings != null) {
+                    for (Name name : postings) {
+                        s.touch(name.slot);
+                        s.sharedGrams[name.slot]++;
+                    }
+                }
+            }
+            for (int w = 0; w < phoneticWords; w++) {
+                for (String key : queryKeys[w]) {
+                    List<Name> postings = t.byPhonetic.get(key);
+                    if (postings != null) {
+                        for (Name name : postings) {
+                            s.touch(name.slot);
+                            s.phoneticWords[name.slot] |= 1 << w;
+                        }
+                    }
+                }
+            }
+
+            // Min-heap of the best names; a name can hold several patients, so stop
+            // adding names once the ones kept already cover the limit
+            PriorityQueue<ScoredName> best = new PriorityQueue<>(Comparator.comparingDouble((ScoredName n) -> n.score));
+            int kept = 0;
+            for (int i = 0; i < s.touchedCount; i++) {
+                int slot = s.touched[i];
+                Name name = t.slots[slot];
+                double trigram = 2.0 * s.sharedGrams[slot] / (queryGrams.length + name.grams.length);
+                double phonetic = (double) Integer.bitCount(s.phoneticWords[slot]) / phoneticWords;
+                double score = TRIGRAM_WEIGHT * trigram + PHONETIC_WEIGHT * phonetic;
+                if (kept < limit || score > best.peek().score) {
+                    best.add(new ScoredName(name, score));
+                    kept += name.patients.size();
+                    while (kept - best.peek().name.patients.size() >= limit) {
+                        kept -= best.poll().name.patients.size();
+                    }
+                }
+            }
+
+            List<ScoredName> ranked = new ArrayList<>(best);
+            ranked.sort(Comparator.comparingDouble((ScoredName n) -> n.score).reversed());
+            for (ScoredName scored : ranked) {
+                for (Entry entry : scored.name.patients) {
+                    if (matches.size() == limit) {
+                        break;
+                    }
+                    matches.add(new Match(entry.patientId, entry.firstName, entry.lastName, scored.score));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+            s.clear();
+        }
+        return matches;
+    }
+
+    /**
+     * Stops following DatabaseManager changes
+     */
+    @Override
+    public void close() {
+        DatabaseManager.removePatientChangeListener(this);
+    }
+
+    /**
+     * Lower-cases a name and splits it into words of letters only
+     */
+    static List<String> words(String name) {
+        List<String> words = new ArrayList<>(2);
+        if (name == null) {
+            return words;
+        }
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= name.length(); i++) {
+            char c = i < name.length() ? name.charAt(i) : ' ';
+            if (Character.isLetter(c)) {
+                word.append(Character.toLowerCase(c));
+            } else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Distinct trigrams of all words, each packed into a long as three 16-bit chars
+     */
+    static long[] trigrams(List<String> words) {
+        Set<Long> grams = new HashSet<>();
+        for (String word : words) {
+            String padded = "  " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                grams.add(((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2));
+            }
+        }
+        long[] result = new long[grams.size()];
+        int i = 0;
+        for (long gram : grams) {
+            result[i++] = gram;
+        }
+        return result;
+    }
+
+    private static String[] phoneticKeys(List<String> words) {
+        Set<String> keys = new LinkedHashSet<>();
+        for (String word : words) {
+            Collections.addAll(keys, phoneticKeys(word));
+        }
+        return keys.toArray(new String[0]);
+    }
+
+    /**
+     * Soundex and Metaphone keys of one word. Words without A-Z letters, such as Cyrillic
+     * or CJK names, have no phonetic code and get no keys, so they only match by trigrams.
+     */
+    private static String[] phoneticKeys(String word) {
+        String soundex = soundex(word);
+        if (soundex.isEmpty()) {
+            return new String[0];
+        }
+        String metaphone = metaphone(word);
+        return metaphone.isEmpty() ? new String[]{"S" + soundex} : new String[]{"S" + soundex, "M" + metaphone};
+    }
+
+    /**
+     * American Soundex code of a word, e.g. "Robert" and "Rupert" both give R163
+     * @param word name word
+     * @return four-character code, or an empty string if the word has no A-Z letters
+     */
+    static String soundex(String word) {
+        String letters = asciiUpper(word);
+        if (letters.isEmpty()) {
+            return "";
+        }
+        // Codes for A-Z; 0 marks vowels, which separate repeated codes (H and W do not)
+        String codes = "01230120022455012623010202";
+        StringBuilder sb = new StringBuilder(4).append(letters.charAt(0));
+        char last = codes.charAt(letters.charAt(0) - 'A');
+        for (int i = 1; i < letters.length() && sb.length() < 4; i++) {
+            char code = codes.charAt(letters.charAt(i) - 'A');
+            char c = letters.charAt(i);
+            if (c == 'H' || c == 'W') {
+                continue;
+            }
+            if (code != '0' && code != last) {
+                sb.append(code);
+            }
+            last = code;
+        }
+        while (sb.length() < 4) {
+            sb.append('0');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Metaphone key of a word (Lawrence Philips' original rules), e.g. "Smith" and "Smyth" both give SM0
+     * @param word name word
+     * @return phonetic key, possibly empty
+     */
+    static String metaphone(String word) {
+        String w = asciiUpper(word);
+        if (w.isEmpty()) {
+            return "";
+        }
+        if (w.startsWith("AE") || w.startsWith("GN") || w.startsWith("KN") || w.startsWith("PN") || w.startsWith("WR")) {
+            w = w.substring(1);
+        } else if (w.charAt(0) == 'X') {
+            w = "S" + w.substring(1);
+        } else if (w.startsWith("WH")) {
+            w = "W" + w.substring(2);
+        }
+
+        StringBuilder key = new StringBuilder();
+        int n = w.length();
+        for (int i = 0; i < n; i++) {
+            char c = w.charAt(i);
+            char prev = i > 0 ? w.charAt(i - 1) : 0;
+            char next = i + 1 < n ? w.charAt(i + 1) : 0;
+            char after = i + 2 < n ? w.charAt(i + 2) : 0;
+            if (c == prev && c != 'C') {
+                continue;
+            }
+            switch (c) {
+                case 'A': case 'E': case 'I': case 'O': case 'U':
+                    if (i == 0) {
+                        key.append(c);
+                    }
+                    break;
+                case 'B':
+                    if (!(prev == 'M' && i == n - 1)) {
+                        key.append('B');
+                    }
+                    break;
+                case 'C':
+                    if (next == 'I' && after == 'A') {
+                        key.append('X');
+                    } else if (next == 'H') {
+                        key.append(prev == 'S' ? 'K' : 'X');
+                        i++;
+                    } else if (next == 'I' || next == 'E' || next == 'Y') {
+                        if (prev != 'S') {
+                            key.append('S');
+                        }
+                    } else {
+                        key.append('K');
+                    }
+                    break;
+                case 'D':
+                    if (next == 'G' && (after == 'E' || after == 'I' || after == 'Y')) {
+                        key.append('J');
+                        i++;
+                    } else {
+                        key.append('T');
+                    }
+                    break;
+                case 'G':
+                    if (next == 'H' && !(i + 2 >= n || isVowel(after))) {
+                        break;
+                    }
+                    if (next == 'N' && (i + 2 == n || w.startsWith("ED", i + 2) && i + 4 == n)) {
+                        break;
+                    }
+                    key.append(next == 'I' || next == 'E' || next == 'Y' ? 'J' : 'K');
+                    if (next == 'H') {
+                        i++;
+                    }
+                    break;
+                case 'H':
+                    if (isVowel(next) && "CSPTG".indexOf(prev) < 0) {
+                        key.append('H');
+                    }
+                    break;
+                case 'K':
+                    if (prev != 'C') {
+                        key.append('K');
+                    }
+                    break;
+                case 'P':
+                    if (next == 'H') {
+                        key.append('F');
+                        i++;
+                    } else {
+                        key.append('P');
+                    }
+                    break;
+                case 'Q':
+                    key.append('K');
+                    break;
+                case 'S':
+                    if (next == 'H') {
+                        key.append('X');
+                        i++;
+                    } else if (next == 'I' && (after == 'O' || after == 'A')) {
+                        key.append('X');
+                    } else {
+                        key.append('S');
+                    }
+                    break;
+                case 'T':
+                    if (next == 'I' && (after == 'O' || after == 'A')) {
+                        key.append('X');
+                    } else if (next == 'H') {
+                        key.append('0');
+                        i++;
+                    } else if (!(next == 'C' && after == 'H')) {
+                        key.append('T');
+                    }
+                    break;
+                case 'V':
+                    key.append('F');
+                    break;
+                case 'W':
+                case 'Y':
+                    if (isVowel(next)) {
+                        key.append(c);
+                    }
+                    break;
+                case 'X':
+                    key.append("KS");
+                    break;
+                case 'Z':
+                    key.append('S');
+                    break;
+                default:
+                    key.append(c);
+            }
+        }
+        return key.toString();
+    }
+
+    private static boolean isVowel(char c) {
+        return c == 'A' || c == 'E' || c == 'I' || c == 'O' || c == 'U';
+    }
+
+    private static String asciiUpper(String word) {
+        StringBuilder sb = new StringBuilder(word.length());
+        for (int i = 0; i < word.length(); i++) {
+            char c = Character.toUpperCase(word.charAt(i));
+            if (c >= 'A' && c <= 'Z') {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The index structures. Not thread-safe on their own; the index guards them with its lock.
+     */
+    private static final class Tables {
+        final Map<Integer, Entry> byId = new HashMap<>();
+        // Patients with the same normalized name share one Name, so the postings and the
+        // per-search scoring grow with the number of distinct names, not patients
+        final Map<String, Name> byName = new HashMap<>();
+        final Map<Long, List<Name>> byTrigram = new HashMap<>();
+        final Map<String, List<Name>> byPhonetic = new HashMap<>();
+        Name[] slots = new Name[1024];
+        int slotCount;
+        final Deque<Integer> freeSlots = new ArrayDeque<>();
+
+        void put(int patientId, String firstName, String lastName) {
+            Entry old = byId.get(patientId);
+            if (old != null) {
+                unlink(old);
+            }
+            List<String> words = words(firstName + " " + lastName);
+            String key = String.join(" ", words);
+            Name name = byName.get(key);
+            if (name == null) {
+                name = new Name(key, trigrams(words), phoneticKeys(words), allocateSlot());
+                byName.put(key, name);
+                slots[name.slot] = name;
+                for (long gram : name.grams) {
+                    byTrigram.computeIfAbsent(gram, g -> new ArrayList<>(4)).add(name);
+                }
+                for (String phoneticKey : name.phoneticKeys) {
+                    byPhonetic.computeIfAbsent(phoneticKey, k -> new ArrayList<>(4)).add(name);
+                }
+            }
+            Entry entry = new Entry(patientId, firstName, lastName, name);
+            name.patients.add(entry);
+            byId.put(patientId, entry);
+        }
+
+        boolean remove(int patientId) {
+            Entry entry = byId.remove(patientId);
+            if (entry == null) {
+                return false;
+            }
+            unlink(entry);
+            return true;
+        }
+
+        private void unlink(Entry entry) {
+            Name name = entry.name;
+            name.patients.remove(entry);
+            if (!name.patients.isEmpty()) {
+                return;
+            }
+            byName.remove(name.key);
+            for (long gram : name.grams) {
+                removePosting(byTrigram, gram, name);
+            }
+            for (String key : name.phoneticKeys) {
+                removePosting(byPhonetic, key, name);
+            }
+            slots[name.slot] = null;
+            freeSlots.push(name.slot);
+        }
+
+        private int allocateSlot() {
+            if (!freeSlots.isEmpty()) {
+                return freeSlots.pop();
+            }
+            if (slotCount == slots.length) {
+                slots = Arrays.copyOf(slots, slots.length * 2);
+            }
+            return slotCount++;
+        }
+
+        private static <K> void removePosting(Map<K, List<Name>> postings, K key, Name name) {
+            List<Name> list = postings.get(key);
+            if (list != null) {
+                list.remove(name);
+                if (list.isEmpty()) {
+                    postings.remove(key);
+                }
+            }
+        }
+    }
+
+    private static final class Entry {
+        final int patientId;
+        final String firstName;
+        final String lastName;
+        final Name name;
+
+        Entry(int patientId, String firstName, String lastName, Name name) {
+            this.patientId = patientId;
+            this.firstName = firstName;
+            this.lastName = lastName;
+            this.name = name;
+        }
+    }
+
+    /**
+     * A distinct normalized name and the patients who have it
+     */
+    private static final class Name {
+        final String key;
+        final long[] grams;
+        final String[] phoneticKeys;
+        final int slot;
+        final List<Entry> patients = new ArrayList<>(1);
+
+        Name(String key, long[] grams, String[] phoneticKeys, int slot) {
+            this.key = key;
+            this.grams = grams;
+            this.phoneticKeys = phoneticKeys;
+            this.slot = slot;
+        }
+    }
+
+    private static final class ScoredName {
+        final Name name;
+        final double score;
+
+        ScoredName(Name name, double score) {
+            this.name = name;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Per-thread counters indexed by name slot, reused across searches
+     */
+    private static final class Scratch {
+        int[] sharedGrams = new int[0];
+        int[] phoneticWords = new int[0];
+        int[] touched = new int[0];
+        int touchedCount;
+
+        void ensureCapacity(int slots) {
+            if (sharedGrams.length < slots) {
+                sharedGrams = new int[slots];
+                phoneticWords = new int[slots];
+                touched = new int[slots];
+            }
+        }
+
+        void touch(int slot) {
+            if (sharedGrams[slot] == 0 && phoneticWords[slot] == 0) {
+                touched[touchedCount++] = slot;
+            }
+        }
+
+        void clear() {
+            for (int i = 0; i < touchedCount; i++) {
+                sharedGrams[touched[i]] = 0;
+                phoneticWords[touched[i]] = 0;
+            }
+            touchedCount = 0;
+        }
+    }
+
+    /**
+     * One ranked search result
+     */
+    public static final class Match {
+        private final int patientId;
+        private final String firstName;
+        private final String lastName;
+        private final double score;
+
+        Match(int patientId, String firstName, String lastName, double score) {
+            this.patientId = patientId;
+            this.firstName = firstName;
+            this.lastName = lastName;
+            this.score = score;
+        }
+
+        public int getPatientId() {
+            return patientId;
+        }
+
+        public String getFirstName() {
+            return firstName;
+        }
+
+        public String getLastName() {
+            return lastName;
+        }
+
+        /**
+         * @return similarity between 0 and 1, higher is closer
+         */
+        public double getScore() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Patient ID: %d, Name: %s %s, Score: %.2f", patientId, firstName, lastName, score);
+        }
+    }
+}
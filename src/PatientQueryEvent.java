@@ -0,0 +1,24 @@
+import jdk.jfr.*;
+
+/**
+ * JFR event emitted by DatabaseManager for every patient query, including failed ones.
+ */
+@Name("qap4.PatientQuery")
+@Label("Patient Query")
+@Description("Patient rows read by DatabaseManager")
+@Category({"QAP4", "Database"})
+@StackTrace(false)
+public class PatientQueryEvent extends Event {
+    @Label("SQL")
+    public String sql;
+
+    @Label("Rows")
+    public int rowCount;
+
+    @Label("Success")
+    public boolean success;
+
+    @Label("Error")
+    @Description("Exception that failed the operation, or null")
+    public String error;
+}
@@ -0,0 +1,367 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Off-heap snapshot of the patients table for large reporting working sets.
+ * Patients are stored as fixed-size records in direct (or memory-mapped) buffer slabs
+ * with an open-addressing id index that is also off-heap, so the snapshot adds almost
+ * nothing to the garbage collector's work no matter how many rows it holds.
+ * Rows are read through a reusable View flyweight instead of one Patient per row.
+ *
+ * refresh() loads only rows whose id is above the highest id loaded so far. Rows that
+ * were updated in place, or inserted with a lower id, are picked up by reload().
+ * Any number of threads may read at once, each with its own View, but refresh() and
+ * reload() must not run while other threads are reading.
+ */
+public class PatientSnapshot implements Closeable {
+    private static final int NAME_CHARS = 50;
+    private static final int ID_OFFSET = 0;
+    private static final int DOB_OFFSET = 4;
+    private static final int FIRST_LENGTH_OFFSET = 8;
+    private static final int LAST_LENGTH_OFFSET = 9;
+    private static final int FIRST_NAME_OFFSET = 12;
+    private static final int LAST_NAME_OFFSET = FIRST_NAME_OFFSET + NAME_CHARS * 2;
+    private static final int RECORD_SIZE = 216;
+
+    private static final int SLAB_SHIFT = 16;
+    private static final int RECORDS_PER_SLAB = 1 << SLAB_SHIFT;
+    private static final int SLAB_MASK = RECORDS_PER_SLAB - 1;
+
+    // The index is one ByteBuffer of 8-byte slots kept at most half full, so its int-addressed
+    // size caps the slot count at 2^27 and the snapshot at 2^26 (about 67 million) patients
+    private static final int INDEX_SLOT_BYTES = 8;
+    private static final int MAX_INDEX_CAPACITY = 1 << 27;
+    public static final int MAX_PATIENTS = MAX_INDEX_CAPACITY / 2;
+
+    private final Path mapDirectory;
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+    private final List<Path> slabFiles = new ArrayList<>();
+    private ByteBuffer index;
+    private int indexCapacity;
+    private int size;
+    private int maxId = Integer.MIN_VALUE;
+
+    /**
+     * Creates an empty snapshot backed by direct memory
+     */
+    public PatientSnapshot() {
+        this(null);
+    }
+
+    /**
+     * Creates an empty snapshot
+     * @param mapDirectory directory for memory-mapped slab files, or null to use direct memory
+     */
+    public PatientSnapshot(Path mapDirectory) {
+        this.mapDirectory = mapDirectory;
+        allocateIndex(1024);
+    }
+
+    /**
+     * Creates a snapshot in direct memory and loads every patient
+     * @return loaded snapshot
+     * @throws SQLException if database operations fail
+     * @throws IOException if slab memory cannot be allocated
+     */
+    public static PatientSnapshot load() throws SQLException, IOException {
+        PatientSnapshot snapshot = new PatientSnapshot();
+        snapshot.refresh();
+        return snapshot;
+    }
+
+    /**
+     * Loads patients inserted with an id above the highest id in the snapshot
+     * @return number of rows loaded
+     * @throws SQLException if database operations fail
+     * @throws IOException if slab memory cannot be allocated
+     */
+    public int refresh() throws SQLException, IOException {
+        try {
+            return DatabaseManager.streamPatients(maxId, this::put);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Discards the snapshot contents and loads every patient again
+     * @return number of rows loaded
+     * @throws SQLException if database operations fail
+     * @throws IOException if slab memory cannot be allocated
+     */
+    public int reload() throws SQLException, IOException {
+        size = 0;
+        maxId = Integer.MIN_VALUE;
+        allocateIndex(indexCapacity);
+        return refresh();
+    }
+
+    /**
+     * Adds a patient or overwrites the record with the same id
+     * @param patientId patient identifier
+     * @param firstName first name, at most 50 characters
+     * @param lastName last name, at most 50 characters
+     * @param dobEpochDay date of birth as days since 1970-01-01
+     */
+    public void put(int patientId, String firstName, String lastName, int dobEpochDay) {
+        if (firstName.length() > NAME_CHARS || lastName.length() > NAME_CHARS) {
+            throw new IllegalArgumentException("Patient " + patientId + " has a name longer than " + NAME_CHARS + " characters");
+        }
+
+        int record = findRecord(patientId);
+        if (record < 0) {
+            if (size == MAX_PATIENTS) {
+                throw new IllegalStateException("Patient snapshot is full: it holds at most " + MAX_PATIENTS + " patients");
+            }
+            record = size;
+            ensureSlab(record);
+            size++;
+            if (size * 2 > indexCapacity) {
+                rehash(indexCapacity * 2);
+            }
+            indexInsert(patientId, record);
+        }
+
+        ByteBuffer slab = slabs.get(record >>> SLAB_SHIFT);
+        int base = (record & SLAB_MASK) * RECORD_SIZE;
+        slab.putInt(base + ID_OFFSET, patientId);
+        slab.putInt(base + DOB_OFFSET, dobEpochDay);
+        slab.put(base + FIRST_LENGTH_OFFSET, (byte) firstName.length());
+        slab.put(base + LAST_LENGTH_OFFSET, (byte) lastName.length());
+        for (int i = 0; i < firstName.length(); i++) {
+            slab.putChar(base + FIRST_NAME_OFFSET + i * 2, firstName.charAt(i));
+        }
+        for (int i = 0; i < lastName.length(); i++) {
+            slab.putChar(base + LAST_NAME_OFFSET + i * 2, lastName.charAt(i));
+        }
+        maxId = Math.max(maxId, patientId);
+    }
+
+    /**
+     * @return number of patients in the snapshot
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return bytes of off-heap memory held by the record slabs and the index
+     */
+    public long offHeapBytes() {
+        return (long) slabs.size() * RECORDS_PER_SLAB * RECORD_SIZE + (long) indexCapacity * INDEX_SLOT_BYTES;
+    }
+
+    /**
+     * Creates a flyweight for reading records; each reading thread needs its own
+     * @return new View, not yet positioned on a record
+     */
+    public View view() {
+        return new View();
+    }
+
+    /**
+     * Positions a view on the patient with the given id
+     * @param patientId patient identifier
+     * @param view view to position
+     * @return true if the patient exists
+     */
+    public boolean find(int patientId, View view) {
+        int record = findRecord(patientId);
+        if (record < 0) {
+            return false;
+        }
+        view.moveTo(record);
+        return true;
+    }
+
+    /**
+     * Visits every record in load order with a single reused view
+     * @param action called once per patient; must not keep the view
+     */
+    public void forEach(Consumer<View> action) {
+        View view = new View();
+        for (int record = 0; record < size; record++) {
+            view.moveTo(record);
+            action.accept(view);
+        }
+    }
+
+    /**
+     * Releases the slabs and deletes any memory-mapped slab files.
+     * Direct memory is returned to the JVM once the buffers are garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        slabs.clear();
+        index = null;
+        size = 0;
+        for (Path file : slabFiles) {
+            Files.deleteIfExists(file);
+        }
+        slabFiles.clear();
+    }
+
+    private void ensureSlab(int record) {
+        int slabIndex = record >>> SLAB_SHIFT;
+        while (slabs.size() <= slabIndex) {
+            slabs.add(allocateSlab());
+        }
+    }
+
+    private ByteBuffer allocateSlab() {
+        int bytes = RECORDS_PER_SLAB * RECORD_SIZE;
+        if (mapDirectory == null) {
+            return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        }
+        try {
+            Path file = Files.createTempFile(mapDirectory, "patients-", ".slab");
+            file.toFile().deleteOnExit();
+            slabFiles.add(file);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes).order(ByteOrder.nativeOrder());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void allocateIndex(int capacity) {
+        if (capacity > MAX_INDEX_CAPACITY) {
+            throw new IllegalStateException("Patient index cannot grow past " + MAX_INDEX_CAPACITY + " slots");
+        }
+        indexCapacity = capacity;
+        index = ByteBuffer.allocateDirect(capacity * INDEX_SLOT_BYTES).order(ByteOrder.nativeOrder());
+    }
+
+    private static int slot(int patientId, int capacity) {
+        int h = patientId * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (capacity - 1);
+    }
+
+    /**
+     * Index entries hold the patient id and the record number plus one; zero marks an empty slot
+     */
+    private int findRecord(int patientId) {
+        int mask = indexCapacity - 1;
+        for (int slot = slot(patientId, indexCapacity); ; slot = (slot + 1) & mask) {
+            int value = index.getInt(slot * INDEX_SLOT_BYTES + 4);
+            if (value == 0) {
+                return -1;
+            }
+            if (index.getInt(slot * INDEX_SLOT_BYTES) == patientId) {
+                return value - 1;
+            }
+        }
+    }
+
+    private void indexInsert(int patientId, int record) {
+        int mask = indexCapacity - 1;
+        int slot = slot(patientId, indexCapacity);
+        while (index.getInt(slot * INDEX_SLOT_BYTES + 4) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index.putInt(slot * INDEX_SLOT_BYTES, patientId);
+        index.putInt(slot * INDEX_SLOT_BYTES + 4, record + 1);
+    }
+
+    private void rehash(int newCapacity) {
+        allocateIndex(newCapacity);
+        for (int record = 0; record < size; record++) {
+            ByteBuffer slab = slabs.get(record >>> SLAB_SHIFT);
+            indexInsert(slab.getInt((record & SLAB_MASK) * RECORD_SIZE + ID_OFFSET), record);
+        }
+    }
+
+    /**
+     * Flyweight over one fixed-layout patient record
+     */
+    public final class View {
+        private ByteBuffer slab;
+        private int base;
+
+        private void moveTo(int record) {
+            slab = slabs.get(record >>> SLAB_SHIFT);
+            base = (record & SLAB_MASK) * RECORD_SIZE;
+        }
+
+        public int getPatientId() {
+            return slab.getInt(base + ID_OFFSET);
+        }
+
+        public int getDobEpochDay() {
+            return slab.getInt(base + DOB_OFFSET);
+        }
+
+        public LocalDate getDob() {
+            return LocalDate.ofEpochDay(getDobEpochDay());
+        }
+
+        public int getFirstNameLength() {
+            return slab.get(base + FIRST_LENGTH_OFFSET);
+        }
+
+        public char getFirstNameChar(int i) {
+            return slab.getChar(base + FIRST_NAME_OFFSET + i * 2);
+        }
+
+        public int getLastNameLength() {
+            return slab.get(base + LAST_LENGTH_OFFSET);
+        }
+
+        public char getLastNameChar(int i) {
+            return slab.getChar(base + LAST_NAME_OFFSET + i * 2);
+        }
+
+        /**
+         * Builds the first name as a String; use getFirstNameChar in tight loops to avoid the allocation
+         */
+        public String getFirstName() {
+            return readName(FIRST_NAME_OFFSET, getFirstNameLength());
+        }
+
+        /**
+         * Builds the last name as a String; use getLastNameChar in tight loops to avoid the allocation
+         */
+        public String getLastName() {
+            return readName(LAST_NAME_OFFSET, getLastNameLength());
+        }
+
+        /**
+         * Appends "first last" to a caller-owned builder without intermediate Strings
+         * @param sb builder to append to
+         * @return the same builder
+         */
+        public StringBuilder appendFullName(StringBuilder sb) {
+            for (int i = 0, n = getFirstNameLength(); i < n; i++) {
+                sb.append(getFirstNameChar(i));
+            }
+            sb.append(' ');
+            for (int i = 0, n = getLastNameLength(); i < n; i++) {
+                sb.append(getLastNameChar(i));
+            }
+            return sb;
+        }
+
+        /**
+         * Copies the current record to the heap
+         * @return CompactPatient with the same values
+         */
+        public CompactPatient toCompactPatient() {
+            return new CompactPatient(getPatientId(), getFirstName(), getLastName(), getDobEpochDay());
+        }
+
+        private String readName(int offset, int length) {
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = slab.getChar(base + offset + i * 2);
+            }
+            return new String(chars);
+        }
+    }
+}
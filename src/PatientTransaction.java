@@ -0,0 +1,181 @@
+import java.sql.*;
+import java.util.*;
+
+/**
+ * PatientTransaction groups many patient writes on one connection so they are committed once.
+ * Obtain one through DatabaseManager.inTransaction; it must not be used after that call returns.
+ * Prepared statements are created on first use and reused for the rest of the transaction.
+ */
+public class PatientTransaction {
+
+    /**
+     * PostgreSQL synchronous_commit levels for a transaction.
+     * OFF returns from commit before the WAL is flushed: a server crash can lose the
+     * last few transactions, but never corrupts data or leaves them half applied.
+     */
+    public enum SynchronousCommit {
+        ON, OFF, LOCAL, REMOTE_WRITE, REMOTE_APPLY
+    }
+
+    /**
+     * Work to run inside a transaction or savepoint
+     */
+    @FunctionalInterface
+    public interface Body {
+        void run(PatientTransaction tx) throws SQLException;
+    }
+
+    private static final String UPDATE_PATIENT_SQL = "UPDATE patients SET first_name = ?, last_name = ?, dob = ? WHERE id = ?";
+    private static final String DELETE_PATIENT_SQL = "DELETE FROM patients WHERE id = ?";
+
+    private final Connection conn;
+    private final String insertSql;
+    private PreparedStatement insertStmt;
+    private PreparedStatement updateStmt;
+    private PreparedStatement deleteStmt;
+    private int rowsAffected;
+    // Listener notifications held back until the transaction commits
+    private final List<Runnable> pendingChanges = new ArrayList<>();
+
+    PatientTransaction(Connection conn, String insertSql) {
+        this.conn = conn;
+        this.insertSql = insertSql;
+    }
+
+    /**
+     * Inserts a patient
+     * @param patient Patient object to save
+     * @return number of rows inserted
+     * @throws SQLException if the insert fails
+     */
+    public int savePatient(Patient patient) throws SQLException {
+        if (insertStmt == null) {
+            insertStmt = conn.prepareStatement(insertSql);
+        }
+        insertStmt.setInt(1, patient.getPatientId());
+        insertStmt.setString(2, patient.getFirstName());
+        insertStmt.setString(3, patient.getLastName());
+        insertStmt.setDate(4, toSqlDate(patient.getDob()));
+        return savedRows(patient, insertStmt.executeUpdate());
+    }
+
+    /**
+     * Updates the names and date of birth of an existing patient
+     * @param patient Patient object with the new values
+     * @return number of rows updated, 0 if no patient has this id
+     * @throws SQLException if the update fails
+     */
+    public int updatePatient(Patient patient) throws SQLException {
+        if (updateStmt == null) {
+            updateStmt = conn.prepareStatement(UPDATE_PATIENT_SQL);
+        }
+        updateStmt.setString(1, patient.getFirstName());
+        updateStmt.setString(2, patient.getLastName());
+        updateStmt.setDate(3, toSqlDate(patient.getDob()));
+        updateStmt.setInt(4, patient.getPatientId());
+        return savedRows(patient, updateStmt.executeUpdate());
+    }
+
+    /**
+     * Deletes a patient
+     * @param patientId identifier of the patient to delete
+     * @return number of rows deleted, 0 if no patient has this id
+     * @throws SQLException if the delete fails
+     */
+    public int deletePatient(int patientId) throws SQLException {
+        if (deleteStmt == null) {
+            deleteStmt = conn.prepareStatement(DELETE_PATIENT_SQL);
+        }
+        deleteStmt.setInt(1, patientId);
+        int rows = count(deleteStmt.executeUpdate());
+        if (rows > 0 && DatabaseManager.hasPatientChangeListeners()) {
+            pendingChanges.add(() -> DatabaseManager.firePatientDeleted(patientId));
+        }
+        return rows;
+    }
+
+    /**
+     * Runs work under a savepoint. If it fails, only its own changes are rolled back
+     * and the rest of the transaction carries on.
+     * @param body work to run
+     * @return true if the work succeeded, false if it was rolled back
+     * @throws SQLException if the savepoint itself cannot be set or rolled back
+     */
+    public boolean withSavepoint(Body body) throws SQLException {
+        Savepoint savepoint = conn.setSavepoint();
+        int rowsBefore = rowsAffected;
+        int changesBefore = pendingChanges.size();
+        try {
+            body.run(this);
+            conn.releaseSavepoint(savepoint);
+            return true;
+        } catch (SQLException e) {
+            conn.rollback(savepoint);
+            rowsAffected = rowsBefore;
+            pendingChanges.subList(changesBefore, pendingChanges.size()).clear();
+            PersistenceLog.warn("Rolled back to savepoint: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Inserts a patient under its own savepoint, so a duplicate id or bad row does not
+     * abort the whole transaction
+     * @param patient Patient object to save
+     * @return true if the patient was saved
+     * @throws SQLException if the savepoint itself fails
+     */
+    public boolean trySavePatient(Patient patient) throws SQLException {
+        return withSavepoint(tx -> tx.savePatient(patient));
+    }
+
+    /**
+     * @return rows changed so far by statements that have not been rolled back
+     */
+    public int getRowsAffected() {
+        return rowsAffected;
+    }
+
+    void close() {
+        for (PreparedStatement stmt : new PreparedStatement[]{insertStmt, updateStmt, deleteStmt}) {
+            if (stmt != null) {
+                try {
+                    stmt.close();
+                } catch (SQLException e) {
+                    // The connection is closed right after, which releases the statement anyway
+                }
+            }
+        }
+    }
+
+    void fireCommitted() {
+        for (Runnable change : pendingChanges) {
+            change.run();
+        }
+    }
+
+    private int savedRows(Patient patient, int rows) throws SQLException {
+        count(rows);
+        if (rows > 0 && DatabaseManager.hasPatientChangeListeners()) {
+            int patientId = patient.getPatientId();
+            String firstName = patient.getFirstName();
+            String lastName = patient.getLastName();
+            int dobEpochDay = (int) toSqlDate(patient.getDob()).toLocalDate().toEpochDay();
+            pendingChanges.add(() -> DatabaseManager.firePatientSaved(patientId, firstName, lastName, dobEpochDay));
+        }
+        return rows;
+    }
+
+    private int count(int rows) {
+        rowsAffected += rows;
+        return rows;
+    }
+
+    private static java.sql.Date toSqlDate(String dob) throws SQLException {
+        try {
+            return java.sql.Date.valueOf(dob);
+        } catch (IllegalArgumentException e) {
+            throw new SQLException("Invalid date format. Expected YYYY-MM-DD, got: " + dob);
+        }
+    }
+}
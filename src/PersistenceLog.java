@@ -0,0 +1,210 @@
+import java.io.PrintStream;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * PersistenceLog is the leveled status log used by FileManager and DatabaseManager.
+ * Messages are handed to a bounded ring buffer and printed by a background thread,
+ * so callers never block on console I/O; if the buffer is full the message is dropped
+ * and counted. Warnings and errors are rate-limited to avoid flooding the console
+ * when a bulk operation fails on every record.
+ *
+ * Configuration (system properties):
+ *   qap4.log.level           DEBUG, INFO, WARN, ERROR or OFF (default INFO; OFF is the silent library mode)
+ *   qap4.log.async           false to print on the calling thread (default true)
+ *   qap4.log.bufferSize      ring buffer capacity in messages (default 8192)
+ *   qap4.log.errorsPerSecond warnings and errors printed per second (default 10)
+ */
+public class PersistenceLog {
+
+    /**
+     * Log levels in increasing order of severity
+     */
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR, OFF
+    }
+
+    private static final int ERRORS_PER_SECOND = Integer.getInteger("qap4.log.errorsPerSecond", 10);
+    private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static volatile Level level = parseLevel(System.getProperty("qap4.log.level", "INFO"));
+    private static final boolean ASYNC = Boolean.parseBoolean(System.getProperty("qap4.log.async", "true"));
+    private static final BlockingQueue<String> BUFFER =
+            new ArrayBlockingQueue<>(Integer.getInteger("qap4.log.bufferSize", 8192));
+
+    private static final AtomicLong enqueued = new AtomicLong();
+    private static final AtomicLong written = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+
+    private static final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private static final AtomicInteger windowCount = new AtomicInteger();
+    private static final AtomicLong suppressed = new AtomicLong();
+
+    private static final Thread WRITER;
+
+    static {
+        if (ASYNC) {
+            WRITER = new Thread(PersistenceLog::drainLoop, "persistence-log-writer");
+            WRITER.setDaemon(true);
+            WRITER.start();
+        } else {
+            WRITER = null;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(PersistenceLog::drainRemaining, "persistence-log-flush"));
+    }
+
+    /**
+     * Sets the minimum level that is printed; Level.OFF silences the log completely
+     * @param newLevel minimum level to print
+     */
+    public static void setLevel(Level newLevel) {
+        level = newLevel;
+    }
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    /**
+     * @param messageLevel level to check
+     * @return true if messages at this level are printed
+     */
+    public static boolean isEnabled(Level messageLevel) {
+        return messageLevel != Level.OFF && messageLevel.compareTo(level) >= 0;
+    }
+
+    public static void debug(String message) {
+        if (isEnabled(Level.DEBUG)) {
+            write(message);
+        }
+    }
+
+    public static void info(String message) {
+        if (isEnabled(Level.INFO)) {
+            write(message);
+        }
+    }
+
+    public static void warn(String message) {
+        if (isEnabled(Level.WARN) && allowRateLimited()) {
+            write("WARN: " + message);
+        }
+    }
+
+    public static void error(String message) {
+        if (isEnabled(Level.ERROR) && allowRateLimited()) {
+            write("ERROR: " + message);
+        }
+    }
+
+    /**
+     * Reports the warnings and errors suppressed so far, then waits until every message
+     * logged so far has been printed, or one second has passed
+     */
+    public static void flush() {
+        reportSuppressed();
+        long target = enqueued.get();
+        long deadline = System.nanoTime() + SECOND_NANOS;
+        while (written.get() < target && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(100_000);
+        }
+        System.out.flush();
+    }
+
+    /**
+     * @return number of messages dropped because the ring buffer was full
+     */
+    public static long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Allows at most ERRORS_PER_SECOND warnings and errors per one second window.
+     * The number of suppressed messages is reported when the next window opens,
+     * on flush, or at shutdown, whichever comes first.
+     */
+    private static boolean allowRateLimited() {
+        long now = System.nanoTime();
+        long start = windowStart.get();
+        if (now - start >= SECOND_NANOS && windowStart.compareAndSet(start, now)) {
+            windowCount.set(0);
+            reportSuppressed();
+        }
+
+        if (windowCount.incrementAndGet() <= ERRORS_PER_SECOND) {
+            return true;
+        }
+        suppressed.incrementAndGet();
+        return false;
+    }
+
+    private static void reportSuppressed() {
+        long skipped = suppressed.getAndSet(0);
+        if (skipped > 0) {
+            write("WARN: " + skipped + " similar message(s) suppressed");
+        }
+    }
+
+    private static void write(String message) {
+        if (!ASYNC) {
+            System.out.println(message);
+            return;
+        }
+        if (BUFFER.offer(message)) {
+            enqueued.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private static void drainLoop() {
+        while (true) {
+            try {
+                String message = BUFFER.take();
+                print(message);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Shutdown hook: stops the writer thread first, so it cannot print after the
+     * messages drained here, then prints whatever is left in order
+     */
+    private static void drainRemaining() {
+        reportSuppressed();
+        if (WRITER != null) {
+            WRITER.interrupt();
+            try {
+                WRITER.join(SECOND_NANOS / 1_000_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        String message;
+        while ((message = BUFFER.poll()) != null) {
+            print(message);
+        }
+        long lost = dropped.get();
+        if (lost > 0) {
+            System.out.println("WARN: " + lost + " log message(s) dropped because the log buffer was full");
+        }
+        System.out.flush();
+    }
+
+    private static void print(String message) {
+        PrintStream out = System.out;
+        out.println(message);
+        written.incrementAndGet();
+    }
+
+    private static Level parseLevel(String value) {
+        try {
+            return Level.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
+        }
+    }
+}
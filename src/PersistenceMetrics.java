@@ -0,0 +1,110 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.management.*;
+
+/**
+ * PersistenceMetrics holds the metrics for every FileManager, ShardedDrugStore and DatabaseManager operation.
+ * Each operation is published as a JMX MBean under "qap4:type=PersistenceMetrics,name=<operation>".
+ * Set -Dqap4.metrics.dumpSeconds=N to also print a text summary every N seconds.
+ */
+public class PersistenceMetrics {
+    public static final OperationMetrics SAVE_DRUG = new OperationMetrics("saveDrug");
+    public static final OperationMetrics READ_ALL_DRUGS = new OperationMetrics("readAllDrugs");
+    public static final OperationMetrics SAVE_DRUGS = new OperationMetrics("saveDrugs");
+    public static final OperationMetrics SORT_DRUGS = new OperationMetrics("sortDrugs");
+    public static final OperationMetrics SAVE_SHARDED_DRUG = new OperationMetrics("saveShardedDrug");
+    public static final OperationMetrics SAVE_SHARDED_DRUGS = new OperationMetrics("saveShardedDrugs");
+    public static final OperationMetrics READ_ALL_SHARDED_DRUGS = new OperationMetrics("readAllShardedDrugs");
+    public static final OperationMetrics SAVE_PATIENT = new OperationMetrics("savePatient");
+    public static final OperationMetrics SAVE_PATIENTS = new OperationMetrics("savePatients");
+    public static final OperationMetrics GET_ALL_PATIENTS = new OperationMetrics("getAllPatients");
+    public static final OperationMetrics SAVE_COMPACT_PATIENTS = new OperationMetrics("saveCompactPatients");
+    public static final OperationMetrics GET_ALL_COMPACT_PATIENTS = new OperationMetrics("getAllCompactPatients");
+    public static final OperationMetrics STREAM_PATIENTS = new OperationMetrics("streamPatients");
+    public static final OperationMetrics TRANSACTION = new OperationMetrics("transaction");
+
+    private static final List<OperationMetrics> ALL = List.of(SAVE_DRUG, SAVE_DRUGS, READ_ALL_DRUGS, SORT_DRUGS,
+            SAVE_SHARDED_DRUG, SAVE_SHARDED_DRUGS, READ_ALL_SHARDED_DRUGS,
+            SAVE_PATIENT, SAVE_PATIENTS, GET_ALL_PATIENTS, SAVE_COMPACT_PATIENTS, GET_ALL_COMPACT_PATIENTS,
+            STREAM_PATIENTS, TRANSACTION);
+
+    private static ScheduledExecutorService dumpExecutor;
+
+    static {
+        registerMBeans();
+
+        long dumpSeconds = Long.getLong("qap4.metrics.dumpSeconds", 0);
+        if (dumpSeconds > 0) {
+            startPeriodicDump(dumpSeconds, System.out);
+        }
+    }
+
+    /**
+     * @return metrics for every instrumented operation
+     */
+    public static List<OperationMetrics> all() {
+        return ALL;
+    }
+
+    /**
+     * Formats the metrics of every operation, one line per operation
+     * @return text summary
+     */
+    public static String dump() {
+        StringBuilder sb = new StringBuilder("=== Persistence Metrics ===");
+        for (OperationMetrics metrics : ALL) {
+            sb.append(System.lineSeparator()).append(metrics);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Prints the text summary at a fixed rate on a daemon thread
+     * @param periodSeconds seconds between dumps
+     * @param out stream to print to
+     */
+    public static synchronized void startPeriodicDump(long periodSeconds, PrintStream out) {
+        stopPeriodicDump();
+        dumpExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "persistence-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumpExecutor.scheduleAtFixedRate(() -> out.println(dump()), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the periodic text summary if one is running
+     */
+    public static synchronized void stopPeriodicDump() {
+        if (dumpExecutor != null) {
+            dumpExecutor.shutdownNow();
+            dumpExecutor = null;
+        }
+    }
+
+    /**
+     * Clears the metrics of every operation
+     */
+    public static void resetAll() {
+        for (OperationMetrics metrics : ALL) {
+            metrics.reset();
+        }
+    }
+
+    private static void registerMBeans() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (OperationMetrics metrics : ALL) {
+                ObjectName name = new ObjectName("qap4:type=PersistenceMetrics,name=" + metrics.getName());
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(metrics, name);
+                }
+            }
+        } catch (JMException e) {
+            System.out.println("Could not register persistence metrics with JMX: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,485 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.*;
+
+/**
+ * ShardedDrugStore partitions Drug records by drugId hash across several files.
+ * Each shard keeps its own open writer guarded by its own lock, so saves to different
+ * shards run in parallel. Full scans read all shards in parallel, and point lookups
+ * read only the shard that owns the id. Operations are recorded in their own metrics
+ * (saveShardedDrug, saveShardedDrugs, readAllShardedDrugs), and every shard file written or
+ * read emits a DrugFileWrite or DrugFileRead JFR event.
+ *
+ * Shard files are named after the base path, e.g. drug_data.txt with 4 shards gives
+ * drug_data.shard-0-of-4.txt ... drug_data.shard-3-of-4.txt. Each shard file uses the
+ * same line format as the single drug file.
+ *
+ * Offline re-sharding:
+ *   java ShardedDrugStore --source drug_data.txt [--source-shards N] --target drug_data.txt --shards M [--delete-source]
+ * Without --source-shards the source is read as a single unsharded file.
+ */
+public class ShardedDrugStore implements Closeable {
+    private final String basePath;
+    private final String[] shardPaths;
+    private final BufferedWriter[] writers;
+    // Count the encoded bytes each shard writer has written
+    private final CountingOutputStream[] counters;
+    private final ReentrantLock[] locks;
+
+    /**
+     * Constructor for ShardedDrugStore
+     * @param basePath path of the unsharded drug file the shard names are derived from
+     * @param shardCount number of shard files
+     */
+    public ShardedDrugStore(String basePath, int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive, got: " + shardCount);
+        }
+        this.basePath = basePath;
+        this.shardPaths = new String[shardCount];
+        this.writers = new BufferedWriter[shardCount];
+        this.counters = new CountingOutputStream[shardCount];
+        this.locks = new ReentrantLock[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shardPaths[i] = shardPath(basePath, i, shardCount);
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Returns the file name of one shard
+     * @param basePath path of the unsharded drug file
+     * @param shard shard index
+     * @param shardCount total number of shards
+     * @return shard file path
+     */
+    public static String shardPath(String basePath, int shard, int shardCount) {
+        int dot = basePath.lastIndexOf('.');
+        int slash = Math.max(basePath.lastIndexOf('/'), basePath.lastIndexOf(File.separatorChar));
+        String suffix = ".shard-" + shard + "-of-" + shardCount;
+        if (dot > slash) {
+            return basePath.substring(0, dot) + suffix + basePath.substring(dot);
+        }
+        return basePath + suffix;
+    }
+
+    /**
+     * Returns the shard that owns a drug id
+     * @param drugId drug identifier
+     * @param shardCount total number of shards
+     * @return shard index between 0 and shardCount - 1
+     */
+    public static int shardFor(int drugId, int shardCount) {
+        // Mix the bits so runs of sequential ids spread evenly across shards
+        int h = drugId * 0x9E3779B9;
+        h ^= h >>> 16;
+        return Math.floorMod(h, shardCount);
+    }
+
+    public int getShardCount() {
+        return shardPaths.length;
+    }
+
+    public String getBasePath() {
+        return basePath;
+    }
+
+    /**
+     * Appends a Drug to the shard that owns its id
+     * @param drug Drug object to save
+     * @throws IOException if file operations fail
+     */
+    public void saveDrug(Drug drug) throws IOException {
+        long start = System.nanoTime();
+        DrugFileWriteEvent event = new DrugFileWriteEvent();
+        event.begin();
+        int shard = shardFor(drug.getDrugId(), shardPaths.length);
+        long bytesWritten = 0;
+        Exception failure = null;
+
+        locks[shard].lock();
+        try {
+            BufferedWriter writer = writer(shard);
+            long before = counters[shard].getCount();
+            writer.write(drug.toString());
+            writer.newLine();
+            writer.flush();
+            bytesWritten = counters[shard].getCount() - before;
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+            PersistenceMetrics.SAVE_SHARDED_DRUG.recordError(start);
+            throw e;
+        } finally {
+            locks[shard].unlock();
+            commitWrite(event, shard, 1, bytesWritten, failure);
+        }
+        PersistenceMetrics.SAVE_SHARDED_DRUG.record(start, 1, 0, bytesWritten);
+    }
+
+    /**
+     * Appends many Drugs, taking each shard lock once
+     * @param drugs Drug objects to save
+     * @throws IOException if file operations fail
+     */
+    public void saveDrugs(List<Drug> drugs) throws IOException {
+        long start = System.nanoTime();
+        int shardCount = shardPaths.length;
+        List<List<Drug>> byShard = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (Drug drug : drugs) {
+            byShard.get(shardFor(drug.getDrugId(), shardCount)).add(drug);
+        }
+
+        long bytesWritten = 0;
+        try {
+            for (int shard = 0; shard < shardCount; shard++) {
+                List<Drug> shardDrugs = byShard.get(shard);
+                if (shardDrugs.isEmpty()) {
+                    continue;
+                }
+                DrugFileWriteEvent event = new DrugFileWriteEvent();
+                event.begin();
+                long shardBytes = 0;
+                Exception failure = null;
+                locks[shard].lock();
+                try {
+                    BufferedWriter writer = writer(shard);
+                    long before = counters[shard].getCount();
+                    for (Drug drug : shardDrugs) {
+                        writer.write(drug.toString());
+                        writer.newLine();
+                    }
+                    writer.flush();
+                    shardBytes = counters[shard].getCount() - before;
+                } catch (IOException | RuntimeException e) {
+                    failure = e;
+                    throw e;
+                } finally {
+                    locks[shard].unlock();
+                    commitWrite(event, shard, shardDrugs.size(), shardBytes, failure);
+                }
+                bytesWritten += shardBytes;
+            }
+        } catch (IOException | RuntimeException e) {
+            PersistenceMetrics.SAVE_SHARDED_DRUGS.recordError(start);
+            throw e;
+        }
+        PersistenceMetrics.SAVE_SHARDED_DRUGS.record(start, drugs.size(), 0, bytesWritten);
+    }
+
+    /**
+     * Reads every shard in parallel
+     * @return all Drug objects, grouped by shard
+     * @throws IOException if file operations fail
+     */
+    public List<Drug> readAllDrugs() throws IOException {
+        long start = System.nanoTime();
+        LongAdder bytesRead = new LongAdder();
+        List<Drug> drugs;
+        try {
+            drugs = IntStream.range(0, shardPaths.length)
+                    .parallel()
+                    .mapToObj(shard -> readShardUnchecked(shard, bytesRead))
+                    .flatMap(List::stream)
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            PersistenceMetrics.READ_ALL_SHARDED_DRUGS.recordError(start);
+            throw e.getCause();
+        } catch (RuntimeException e) {
+            PersistenceMetrics.READ_ALL_SHARDED_DRUGS.recordError(start);
+            throw e;
+        }
+        PersistenceMetrics.READ_ALL_SHARDED_DRUGS.record(start, drugs.size(), bytesRead.sum(), 0);
+        return drugs;
+    }
+
+    /**
+     * Reads all Drugs stored in one shard
+     * @param shard shard index
+     * @return Drug objects in file order
+     * @throws IOException if file operations fail
+     */
+    public List<Drug> readShard(int shard) throws IOException {
+        return readShard(shard, new LongAdder());
+    }
+
+    private List<Drug> readShard(int shard, LongAdder bytesRead) throws IOException {
+        DrugFileReadEvent event = new DrugFileReadEvent();
+        event.begin();
+        List<Drug> drugs = new ArrayList<>();
+        long bytes = 0;
+        Exception failure = null;
+        try {
+            locks[shard].lock();
+            try {
+                if (writers[shard] != null) {
+                    writers[shard].flush();
+                }
+            } finally {
+                locks[shard].unlock();
+            }
+
+            File file = new File(shardPaths[shard]);
+            if (!file.exists()) {
+                return drugs;
+            }
+            bytes = file.length();
+            try (BufferedReader reader = new BufferedReader(new FileReader(file), 64 * 1024)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        drugs.add(Drug.fromString(line));
+                    } catch (RuntimeException e) {
+                        PersistenceLog.warn("Error parsing line in " + shardPaths[shard] + ": " + line + " - " + e.getMessage());
+                    }
+                }
+            }
+            return drugs;
+        } catch (IOException | RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            bytesRead.add(bytes);
+            if (event.shouldCommit()) {
+                event.filePath = shardPaths[shard];
+                event.rowCount = drugs.size();
+                event.byteCount = bytes;
+                event.success = failure == null;
+                event.error = failure == null ? null : failure.toString();
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Looks up a drug by id, reading only the shard that owns it.
+     * Saves only append, so the last matching line wins.
+     * @param drugId drug identifier
+     * @return the most recently saved Drug with this id, or null if none exists
+     * @throws IOException if file operations fail
+     */
+    public Drug findDrug(int drugId) throws IOException {
+        int shard = shardFor(drugId, shardPaths.length);
+        File file = new File(shardPaths[shard]);
+        if (!file.exists()) {
+            return null;
+        }
+
+        locks[shard].lock();
+        try {
+            if (writers[shard] != null) {
+                writers[shard].flush();
+            }
+        } finally {
+            locks[shard].unlock();
+        }
+
+        String idPrefix = drugId + ",";
+        String match = null;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(idPrefix)) {
+                    match = line;
+                }
+            }
+        }
+        return match == null ? null : Drug.fromString(match);
+    }
+
+    /**
+     * Flushes and closes every open shard writer
+     * @throws IOException if a writer cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (int i = 0; i < writers.length; i++) {
+            locks[i].lock();
+            try {
+                if (writers[i] != null) {
+                    writers[i].close();
+                    writers[i] = null;
+                    counters[i] = null;
+                }
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Deletes every shard file of this store
+     * @throws IOException if the store cannot be closed
+     */
+    public void deleteFiles() throws IOException {
+        close();
+        for (String path : shardPaths) {
+            new File(path).delete();
+        }
+    }
+
+    private void commitWrite(DrugFileWriteEvent event, int shard, int rows, long bytes, Exception failure) {
+        if (event.shouldCommit()) {
+            event.filePath = shardPaths[shard];
+            event.rowCount = failure == null ? rows : 0;
+            event.byteCount = failure == null ? bytes : 0;
+            event.success = failure == null;
+            event.error = failure == null ? null : failure.toString();
+            event.commit();
+        }
+    }
+
+    private BufferedWriter writer(int shard) throws IOException {
+        if (writers[shard] == null) {
+            counters[shard] = new CountingOutputStream(new FileOutputStream(shardPaths[shard], true));
+            writers[shard] = new BufferedWriter(new OutputStreamWriter(counters[shard]));
+        }
+        return writers[shard];
+    }
+
+    private List<Drug> readShardUnchecked(int shard, LongAdder bytesRead) {
+        try {
+            return readShard(shard, bytesRead);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Copies drug data into a store with a different number of shards, streaming line by line.
+     * Existing target shard files are replaced.
+     * @param sourcePath base path of the source data
+     * @param sourceShards number of source shards, or 0 for a single unsharded file
+     * @param targetPath base path of the new store
+     * @param targetShards number of shards in the new store
+     * @return number of records copied
+     * @throws IOException if file operations fail
+     * @throws IllegalArgumentException if a target shard file is also a source file
+     */
+    public static long reshard(String sourcePath, int sourceShards, String targetPath, int targetShards) throws IOException {
+        List<String> sourceFiles = new ArrayList<>();
+        if (sourceShards == 0) {
+            sourceFiles.add(sourcePath);
+        } else {
+            for (int i = 0; i < sourceShards; i++) {
+                sourceFiles.add(shardPath(sourcePath, i, sourceShards));
+            }
+        }
+        // Compare resolved paths so "./drugs.txt" and "drugs.txt" are seen as the same file
+        Set<Path> sources = new HashSet<>();
+        for (String file : sourceFiles) {
+            sources.add(Paths.get(file).toAbsolutePath().normalize());
+        }
+        for (int i = 0; i < targetShards; i++) {
+            String file = shardPath(targetPath, i, targetShards);
+            if (sources.contains(Paths.get(file).toAbsolutePath().normalize())) {
+                throw new IllegalArgumentException("Target shard " + file + " would overwrite the source");
+            }
+        }
+
+        long copied = 0;
+        List<Drug> chunk = new ArrayList<>();
+        try (ShardedDrugStore target = new ShardedDrugStore(targetPath, targetShards)) {
+            // Shard writers append, so start from empty targets instead of adding a second copy
+            target.deleteFiles();
+            for (String file : sourceFiles) {
+                if (!new File(file).exists()) {
+                    continue;
+                }
+                try (BufferedReader reader = new BufferedReader(new FileReader(file), 64 * 1024)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.isBlank()) {
+                            continue;
+                        }
+                        try {
+                            chunk.add(Drug.fromString(line));
+                        } catch (RuntimeException e) {
+                            PersistenceLog.warn("Skipping unparseable line in " + file + ": " + line);
+                            continue;
+                        }
+                        if (chunk.size() == 10_000) {
+                            target.saveDrugs(chunk);
+                            copied += chunk.size();
+                            chunk.clear();
+                        }
+                    }
+                }
+            }
+            target.saveDrugs(chunk);
+            copied += chunk.size();
+        }
+        return copied;
+    }
+
+    public static void main(String[] args) {
+        String source = null;
+        String target = null;
+        int sourceShards = 0;
+        int targetShards = 0;
+        boolean deleteSource = false;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--source":
+                        source = args[++i];
+                        break;
+                    case "--source-shards":
+                        sourceShards = Integer.parseInt(args[++i]);
+                        break;
+                    case "--target":
+                        target = args[++i];
+                        break;
+                    case "--shards":
+                        targetShards = Integer.parseInt(args[++i]);
+                        break;
+                    case "--delete-source":
+                        deleteSource = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown option " + args[i]);
+                }
+            }
+            if (source == null || target == null || targetShards <= 0) {
+                throw new IllegalArgumentException("--source, --target and --shards are required");
+            }
+        } catch (RuntimeException e) {
+            System.out.println("Invalid arguments: " + e.getMessage());
+            System.out.println("Usage: java ShardedDrugStore --source FILE [--source-shards N] --target FILE --shards M [--delete-source]");
+            System.exit(2);
+        }
+
+        try {
+            long start = System.nanoTime();
+            long copied = reshard(source, sourceShards, target, targetShards);
+            if (deleteSource) {
+                if (sourceShards == 0) {
+                    new File(source).delete();
+                } else {
+                    new ShardedDrugStore(source, sourceShards).deleteFiles();
+                }
+            }
+            PersistenceLog.flush();
+            System.out.printf("Re-sharded %d drug(s) into %d shard(s) in %.2f s%n",
+                    copied, targetShards, (System.nanoTime() - start) / 1e9);
+        } catch (Exception e) {
+            System.out.println("Re-shard failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -59,6 +59,132 @@ public class TestScript {
             return drugs.size() == 3 && FileManager.fileExists();
         });
         
+        test("File operations recorded in metrics", () -> {
+            long saves = PersistenceMetrics.SAVE_DRUG.getCount();
+            long rowsRead = PersistenceMetrics.READ_ALL_DRUGS.getRows();
+            FileManager.saveDrug(new Drug(996, "TestDrug4", 5.25, "10mg"));
+            FileManager.readAllDrugs();
+            return PersistenceMetrics.SAVE_DRUG.getCount() == saves + 1 &&
+                   PersistenceMetrics.READ_ALL_DRUGS.getRows() == rowsRead + 4 &&
+                   PersistenceMetrics.SAVE_DRUG.getBytesWritten() > 0;
+        });
+        
+        test("Byte metrics match the file size", () -> {
+            File file = File.createTempFile("drugs-", ".txt");
+            try {
+                long written = PersistenceMetrics.SAVE_DRUGS.getBytesWritten();
+                FileManager.saveDrugs(Arrays.asList(
+                        new Drug(1, "Ibuprofène", 4.5, "200mg"),
+                        new Drug(2, "Paracétamol", 3.0, "500mg")), file.getPath());
+                boolean writeExact = PersistenceMetrics.SAVE_DRUGS.getBytesWritten() - written == file.length();
+                // A last line without a line separator must not be counted as having one
+                try (Writer writer = new FileWriter(file, true)) {
+                    writer.write("3,Aspirin,2.0,100mg");
+                }
+                long read = PersistenceMetrics.READ_ALL_DRUGS.getBytesRead();
+                int rows = FileManager.readAllDrugs(file.getPath()).size();
+                return writeExact && rows == 3 &&
+                       PersistenceMetrics.READ_ALL_DRUGS.getBytesRead() - read == file.length();
+            } finally {
+                file.delete();
+            }
+        });
+        
+        test("External sort with dedup", () -> {
+            File unsorted = File.createTempFile("drugs-", ".txt");
+            File sorted = File.createTempFile("drugs-sorted-", ".txt");
+            try {
+                FileManager.saveDrugs(Arrays.asList(
+                        new Drug(3, "Gamma", 3.0, "30mg"),
+                        new Drug(1, "Alpha", 1.0, "10mg"),
+                        new Drug(3, "GammaNew", 3.5, "35mg"),
+                        new Drug(2, "Beta", 2.0, "20mg")), unsorted.getPath());
+                long written = FileManager.sortDrugs(unsorted.getPath(), sorted.getPath(),
+                        DrugFileSorter.SortKey.ID, true, DrugFileSorter.DEFAULT_MEMORY_BYTES);
+                List<Drug> drugs = FileManager.readAllDrugs(sorted.getPath());
+                return written == 3 &&
+                       drugs.get(0).getDrugId() == 1 &&
+                       drugs.get(1).getDrugId() == 2 &&
+                       drugs.get(2).getDrugName().equals("GammaNew");
+            } finally {
+                unsorted.delete();
+                sorted.delete();
+            }
+        });
+        
+        test("Sharded drug store save, find and read", () -> {
+            File dir = java.nio.file.Files.createTempDirectory("shards-").toFile();
+            String base = new File(dir, "drugs.txt").getPath();
+            long shardedSaves = PersistenceMetrics.SAVE_SHARDED_DRUG.getCount();
+            long singleFileSaves = PersistenceMetrics.SAVE_DRUG.getCount();
+            try (ShardedDrugStore store = new ShardedDrugStore(base, 4)) {
+                store.saveDrugs(Arrays.asList(
+                        new Drug(1, "Alpha", 1.0, "10mg"),
+                        new Drug(2, "Beta", 2.0, "20mg"),
+                        new Drug(3, "Gamma", 3.0, "30mg")));
+                store.saveDrug(new Drug(2, "BetaNew", 2.5, "25mg"));
+                Drug found = store.findDrug(2);
+                List<Drug> all = store.readAllDrugs();
+                return found != null && found.getDrugName().equals("BetaNew") &&
+                       store.findDrug(42) == null &&
+                       all.size() == 4 &&
+                       PersistenceMetrics.SAVE_SHARDED_DRUG.getCount() == shardedSaves + 1 &&
+                       PersistenceMetrics.SAVE_DRUG.getCount() == singleFileSaves;
+            } finally {
+                new ShardedDrugStore(base, 4).deleteFiles();
+                dir.delete();
+            }
+        });
+        
+        test("Re-shard replaces the target on a re-run", () -> {
+            File dir = java.nio.file.Files.createTempDirectory("shards-").toFile();
+            String source = new File(dir, "drugs.txt").getPath();
+            String target = new File(dir, "resharded.txt").getPath();
+            try {
+                List<Drug> drugs = new ArrayList<>();
+                for (int i = 1; i <= 50; i++) {
+                    drugs.add(new Drug(i, "Drug" + i, i, "10mg"));
+                }
+                FileManager.saveDrugs(drugs, source);
+                long first = ShardedDrugStore.reshard(source, 0, target, 3);
+                long second = ShardedDrugStore.reshard(source, 0, target, 3);
+                try (ShardedDrugStore store = new ShardedDrugStore(target, 3)) {
+                    return first == 50 && second == 50 && store.readAllDrugs().size() == 50;
+                }
+            } finally {
+                new File(source).delete();
+                new ShardedDrugStore(target, 3).deleteFiles();
+                dir.delete();
+            }
+        });
+        
+        test("Re-shard refuses to overwrite its source", () -> {
+            File dir = java.nio.file.Files.createTempDirectory("shards-").toFile();
+            String base = new File(dir, "drugs.txt").getPath();
+            try (ShardedDrugStore store = new ShardedDrugStore(base, 4)) {
+                List<Drug> drugs = new ArrayList<>();
+                for (int i = 1; i <= 100; i++) {
+                    drugs.add(new Drug(i, "Drug" + i, i, "10mg"));
+                }
+                store.saveDrugs(drugs);
+            }
+            try {
+                String sameBase = dir.getPath() + File.separator + "." + File.separator + "drugs.txt";
+                try {
+                    ShardedDrugStore.reshard(base, 4, sameBase, 4);
+                    return false;
+                } catch (IllegalArgumentException e) {
+                    // expected
+                }
+                try (ShardedDrugStore store = new ShardedDrugStore(base, 4)) {
+                    return store.readAllDrugs().size() == 100;
+                }
+            } finally {
+                new ShardedDrugStore(base, 4).deleteFiles();
+                dir.delete();
+            }
+        });
+        
         System.out.println();
     }
     
@@ -186,6 +312,61 @@ public class TestScript {
                    patient.getDob().equals("1985-05-15");
         });
         
+        test("Compact patient date handling", () -> {
+            CompactPatient patient = CompactPatient.of(101, "Jane", "Doe", "1985-05-15");
+            boolean invalidRejected;
+            try {
+                CompactPatient.of(102, "Bad", "Date", "1985-02-30");
+                invalidRejected = false;
+            } catch (IllegalArgumentException e) {
+                invalidRejected = true;
+            }
+            return patient.getDobString().equals("1985-05-15") &&
+                   patient.toPatient().getDob().equals("1985-05-15") &&
+                   invalidRejected;
+        });
+        
+        test("Fuzzy patient name search", () -> {
+            PatientNameIndex index = new PatientNameIndex();
+            index.put(1, "Catherine", "Smith");
+            index.put(2, "John", "Doe");
+            index.put(3, "Kathryn", "Smyth");
+            index.remove(2);
+            List<PatientNameIndex.Match> matches = index.search("katherine smyth", 2);
+            return matches.size() == 2 &&
+                   matches.get(0).getPatientId() == 3 &&
+                   matches.get(1).getPatientId() == 1 &&
+                   index.search("jon doe", 5).isEmpty();
+        });
+        
+        test("Off-heap patient snapshot", () -> {
+            try (PatientSnapshot snapshot = new PatientSnapshot()) {
+                // More patients than the initial 1024-slot index holds, so the index is rehashed
+                for (int id = 1; id <= 3000; id++) {
+                    snapshot.put(id * 7, "First" + id, "Last" + id, id);
+                }
+                snapshot.put(7, "Zoë", "O'Brien-Straße", -1);
+                PatientSnapshot.View view = snapshot.view();
+                boolean overwritten = snapshot.find(7, view) &&
+                        view.getFirstName().equals("Zoë") &&
+                        view.getLastName().equals("O'Brien-Straße") &&
+                        view.getDob().equals(java.time.LocalDate.of(1969, 12, 31));
+                boolean grown = snapshot.find(2999 * 7, view) &&
+                        view.getFirstName().equals("First2999") &&
+                        view.getLastName().equals("Last2999") &&
+                        view.getDobEpochDay() == 2999;
+                boolean missing = !snapshot.find(8, view) && !snapshot.find(3001 * 7, view);
+                long[] visited = new long[2];
+                snapshot.forEach(v -> {
+                    visited[0]++;
+                    visited[1] += v.getPatientId();
+                });
+                return overwritten && grown && missing &&
+                       snapshot.size() == 3000 &&
+                       visited[0] == 3000 && visited[1] == 7L * 3000 * 3001 / 2;
+            }
+        });
+        
         test("File content verification", () -> {
             try {
                 List<Drug> drugs = FileManager.readAllDrugs();
@@ -216,7 +397,9 @@ public class TestScript {
         System.out.print("Testing: " + testName + "... ");
         
         try {
-            if (testCase.run()) {
+            boolean passed = testCase.run();
+            PersistenceLog.flush();
+            if (passed) {
                 System.out.println("✅ PASSED");
                 testsPassed++;
             } else {
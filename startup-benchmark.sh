@@ -0,0 +1,44 @@
+#!/usr/bin/env bash
+# Compares time-to-first-output and total run time of DemoScript for the plain jar,
+# the AppCDS archive and (if built) the native executable.
+#
+# Build first:  mvn -Pappcds package      (and optionally mvn -Pnative package)
+# Usage:        ./startup-benchmark.sh [runs]
+
+set -euo pipefail
+cd "$(dirname "$0")/target"
+
+RUNS=${1:-10}
+JAR=advanced-java-persistence-1.0.0.jar
+
+measure() {
+    local label=$1
+    shift
+    local first_total=0 run_total=0
+    for ((i = 0; i < RUNS; i++)); do
+        rm -f drug_data.txt
+        local start first end
+        start=$(date +%s%N)
+        {
+            read -r _
+            first=$(date +%s%N)
+            cat > /dev/null
+        } < <("$@" 2>/dev/null)
+        wait $! 2>/dev/null || true
+        end=$(date +%s%N)
+        first_total=$((first_total + first - start))
+        run_total=$((run_total + end - start))
+    done
+    awk -v label="$label" -v first="$first_total" -v total="$run_total" -v runs="$RUNS" \
+        'BEGIN { printf "%-12s first output: %6.1f ms   total: %6.1f ms\n", label, first / runs / 1e6, total / runs / 1e6 }'
+}
+
+echo "DemoScript, average of $RUNS runs"
+measure "plain jar" java -Dqap4.log.async=false -cp "$JAR" DemoScript
+if [ -f qap4.jsa ]; then
+    measure "AppCDS" java -XX:SharedArchiveFile=qap4.jsa -Dqap4.log.async=false -cp "$JAR" DemoScript
+fi
+if [ -x qap4-demo ]; then
+    measure "native" ./qap4-demo -Dqap4.log.async=false
+fi
+rm -f drug_data.txt